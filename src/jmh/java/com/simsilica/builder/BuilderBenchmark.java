@@ -0,0 +1,321 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ *  Benchmarks the Builder's scheduling overhead using synthetic 
+ *  references.  The calling thread plays the part of the render 
+ *  thread.  Run with the GC profiler to get allocation rates.
+ *
+ *  @author    Paul Speed
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuilderBenchmark {
+
+    /**
+     *  A reference that burns a configurable amount of CPU in build().
+     *  Builds can optionally be held at a gate to keep the workers busy. 
+     */
+    public static class SyntheticRef implements BuilderReference {
+        private volatile int priority;
+        private final long work;
+        private final CountDownLatch gate;
+        
+        public SyntheticRef( int priority, long work ) {
+            this(priority, work, null);
+        }
+        
+        public SyntheticRef( int priority, long work, CountDownLatch gate ) {
+            this.priority = priority;
+            this.work = work;
+            this.gate = gate;
+        }
+        
+        public void setPriority( int priority ) {
+            this.priority = priority;
+        }
+        
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+        
+        @Override
+        public void build() {
+            if( gate != null ) {
+                try {
+                    gate.await();
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if( work > 0 ) {
+                Blackhole.consumeCPU(work);
+            }
+        }
+        
+        @Override
+        public void apply( Builder builder ) {
+        }
+        
+        @Override
+        public void release( Builder builder ) {
+        }
+    }
+ 
+    /**
+     *  Applies updates until the builder has nothing pending, nothing
+     *  building, and nothing left to apply.
+     */   
+    public static void drain( Builder builder ) {
+        while( true ) {
+            int count = builder.applyUpdates(Integer.MAX_VALUE);
+            if( count == 0 && builder.getPendingCount() == 0 && builder.getActiveCount() == 0 ) {
+                // One last pass to catch anything that finished between checks
+                if( builder.applyUpdates(Integer.MAX_VALUE) == 0 ) {
+                    return;
+                }
+            } else if( count == 0 ) {
+                Thread.yield();
+            }
+        }
+    }
+ 
+    /**
+     *  Steady state build/apply/release churn where every operation 
+     *  is one 'frame' that builds a batch of new references, releases 
+     *  the oldest ones beyond the live limit, and applies updates.
+     */
+    @State(Scope.Thread)
+    public static class ChurnState {
+        @Param({"1", "4", "16"})
+        public int poolSize;
+        
+        @Param({"0", "1000"})
+        public long work;
+        
+        @Param({"32"})
+        public int batch;
+        
+        @Param({"2000"})
+        public int liveLimit;
+ 
+        public Builder builder;
+        public ArrayDeque<SyntheticRef> live = new ArrayDeque<SyntheticRef>();
+        public Random random = new Random(0);
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            builder = new Builder("churn", poolSize);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            SyntheticRef ref;
+            while( (ref = live.poll()) != null ) {
+                builder.release(ref);
+            }
+            drain(builder);
+            builder.shutdown();
+        }
+    }
+    
+    @Benchmark
+    public int churn( ChurnState state ) {
+        for( int i = 0; i < state.batch; i++ ) {
+            SyntheticRef ref = new SyntheticRef(state.random.nextInt(64), state.work);
+            state.builder.build(ref);
+            state.live.add(ref);
+        }
+        while( state.live.size() > state.liveLimit ) {
+            state.builder.release(state.live.poll());
+        }
+        return state.builder.applyUpdates(state.batch * 2);
+    }
+ 
+    /**
+     *  A fixed set of references that are already built.  Used to
+     *  measure rebuild storms where every reference is marked for 
+     *  build again while many of them are still in the done pile.
+     */
+    @State(Scope.Thread)
+    public static class StormState {
+        @Param({"1", "4", "16"})
+        public int poolSize;
+        
+        @Param({"1000"})
+        public int count;
+        
+        public Builder builder;
+        public List<SyntheticRef> refs = new ArrayList<SyntheticRef>();
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            builder = new Builder("storm", poolSize);
+            Random random = new Random(0);
+            for( int i = 0; i < count; i++ ) {
+                SyntheticRef ref = new SyntheticRef(random.nextInt(64), 0);
+                refs.add(ref);
+                builder.build(ref);
+            }
+            drain(builder);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for( SyntheticRef ref : refs ) {
+                builder.release(ref);
+            }
+            drain(builder);
+            builder.shutdown();
+        }
+    }
+    
+    @Benchmark
+    public void rebuildStorm( StormState state ) {
+        // The first pass queues everything.  By the time the second 
+        // pass runs, some will be processing and some will be done
+        // which sends them through the Reprocess path.
+        for( SyntheticRef ref : state.refs ) {
+            state.builder.build(ref);
+        }
+        for( SyntheticRef ref : state.refs ) {
+            state.builder.build(ref);
+        }
+        drain(state.builder);
+    }
+ 
+    /**
+     *  A builder whose workers are all held at a gate with many more
+     *  references waiting in the queue behind them.  This lets us measure
+     *  the cost of pause()/resume() and reprioritize() on a full queue
+     *  without the workers draining it.
+     */
+    @State(Scope.Thread)
+    public static class QueuedState {
+        @Param({"1", "4", "16"})
+        public int poolSize;
+        
+        @Param({"1000", "10000"})
+        public int queued;
+        
+        public Builder builder;
+        public CountDownLatch gate;
+        public List<SyntheticRef> blockers = new ArrayList<SyntheticRef>();
+        public List<SyntheticRef> refs = new ArrayList<SyntheticRef>();
+        public int shift;
+        
+        @Setup(Level.Trial)
+        public void setup() throws InterruptedException {
+            builder = new Builder("queued", poolSize);
+            gate = new CountDownLatch(1);
+            
+            // Occupy all of the workers first
+            for( int i = 0; i < poolSize; i++ ) {
+                SyntheticRef ref = new SyntheticRef(-1, 0, gate);
+                blockers.add(ref);
+                builder.build(ref);
+            }
+            while( builder.getPendingCount() > 0 ) {
+                Thread.sleep(1);
+            }
+            
+            Random random = new Random(0);
+            for( int i = 0; i < queued; i++ ) {
+                SyntheticRef ref = new SyntheticRef(random.nextInt(64), 0);
+                refs.add(ref);
+                builder.build(ref);
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            gate.countDown();
+            for( SyntheticRef ref : blockers ) {
+                builder.release(ref);
+            }
+            for( SyntheticRef ref : refs ) {
+                builder.release(ref);
+            }
+            drain(builder);
+            builder.shutdown();
+        }
+    }
+ 
+    @Benchmark
+    public void pauseResume( QueuedState state ) {
+        state.builder.pause();
+        state.builder.resume();
+    }
+    
+    @Benchmark
+    public void reprioritizeAll( QueuedState state ) {
+        // Simulates the pending part of a recenter
+        state.shift++;
+        for( SyntheticRef ref : state.refs ) {
+            ref.setPriority((ref.getPriority() + state.shift) & 63);
+            state.builder.reprioritize(ref);
+        }
+    }
+}
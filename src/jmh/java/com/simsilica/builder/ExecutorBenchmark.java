@@ -0,0 +1,235 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ *  Compares the throughput of the BuildExecutor implementations for
+ *  bursts of builds at different pool sizes.  The pool sizes stand in
+ *  for core counts.  To measure on an actual 4, 16, or 64 core machine
+ *  without one, pin the benchmark JVM to that many cores, for example
+ *  with taskset on Linux, and match the threads parameter.
+ *
+ *  @author    Paul Speed
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    public enum ExecutorType {
+        Priority {
+            public BuildExecutor create( String name, int threads ) {
+                return new PriorityExecutor(name, threads);
+            }
+        },
+        ForkJoin {
+            public BuildExecutor create( String name, int threads ) {
+                return new ForkJoinBuildExecutor(name, threads);
+            }
+        },
+        Virtual {
+            public BuildExecutor create( String name, int threads ) {
+                return new VirtualThreadExecutor(name, threads);
+            }
+        };
+        
+        public abstract BuildExecutor create( String name, int threads );
+    }
+ 
+    @State(Scope.Thread)
+    public static class BurstState {
+        @Param({"Priority", "ForkJoin", "Virtual"})
+        public ExecutorType executor;
+        
+        @Param({"4", "16", "64"})
+        public int threads;
+        
+        @Param({"0", "10000"})
+        public long work;
+        
+        @Param({"2000"})
+        public int count;
+ 
+        public Builder builder;
+        public List<BuilderBenchmark.SyntheticRef> refs = new ArrayList<BuilderBenchmark.SyntheticRef>();
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            builder = new Builder("burst", executor.create("burst", threads));
+            Random random = new Random(0);
+            for( int i = 0; i < count; i++ ) {
+                refs.add(new BuilderBenchmark.SyntheticRef(random.nextInt(64), work));
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for( BuilderBenchmark.SyntheticRef ref : refs ) {
+                builder.release(ref);
+            }
+            BuilderBenchmark.drain(builder);
+            builder.shutdown();
+        }
+    }
+ 
+    /**
+     *  Queues a whole burst of builds, like a grid recentering, and
+     *  waits for them all to be built and applied.
+     */   
+    @Benchmark
+    public void burst( BurstState state ) {
+        for( BuilderBenchmark.SyntheticRef ref : state.refs ) {
+            state.builder.build(ref);
+        }
+        BuilderBenchmark.drain(state.builder);
+    }
+ 
+    /**
+     *  Like BurstState but every build is split into two stages on
+     *  separate executors of the same type so that tasks are handed off
+     *  between pools from the worker threads.
+     */   
+    @State(Scope.Thread)
+    public static class StagedState {
+        @Param({"Priority", "ForkJoin", "Virtual"})
+        public ExecutorType executor;
+        
+        @Param({"4", "16", "64"})
+        public int threads;
+        
+        @Param({"0", "10000"})
+        public long work;
+        
+        @Param({"2000"})
+        public int count;
+ 
+        public Builder builder;
+        public List<StagedRef> refs = new ArrayList<StagedRef>();
+ 
+        @Setup(Level.Trial)
+        public void setup() {
+            builder = new Builder("staged", executor.create("staged", threads));
+            builder.addStage("second", executor.create("staged-second", threads));
+            Random random = new Random(0);
+            for( int i = 0; i < count; i++ ) {
+                refs.add(new StagedRef(new BuilderBenchmark.SyntheticRef(random.nextInt(64), work)));
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for( StagedRef ref : refs ) {
+                builder.release(ref);
+            }
+            BuilderBenchmark.drain(builder);
+            builder.shutdown();
+        }
+    }
+    
+    public static class StagedRef implements StagedReference {
+        private static final String[] STAGES = { null, "second" };
+        private final BuilderBenchmark.SyntheticRef delegate;
+        
+        public StagedRef( BuilderBenchmark.SyntheticRef delegate ) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public String[] getStages() {
+            return STAGES;
+        }
+        
+        @Override
+        public boolean build( int stage, CancellationToken token ) {
+            delegate.build();
+            return true;
+        }
+        
+        @Override
+        public void build( CancellationToken token ) {
+            delegate.build();
+        }
+        
+        @Override
+        public void build() {
+            delegate.build();
+        }
+        
+        @Override
+        public int getPriority() {
+            return delegate.getPriority();
+        }
+        
+        @Override
+        public void apply( Builder builder ) {
+        }
+        
+        @Override
+        public void release( Builder builder ) {
+        }
+    }
+ 
+    @Benchmark
+    public void stagedBurst( StagedState state ) {
+        for( StagedRef ref : state.refs ) {
+            state.builder.build(ref);
+        }
+        BuilderBenchmark.drain(state.builder);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.pager;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.simsilica.builder.Builder;
+
+
+/**
+ *  Measures the render thread cost of moving a PagedGrid one cell 
+ *  at a time.  Zones do no work and builds run synchronously on the
+ *  calling thread so that the numbers are just the paging overhead.
+ *  Each operation is exactly one cell crossing including the 
+ *  applyUpdates() needed to apply and release the zones it caused.
+ *  Run with the GC profiler to get bytes allocated per crossing.
+ *
+ *  @author    Paul Speed
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PagedGridBenchmark {
+
+    public enum Path { Straight, Diagonal, Jitter }
+
+    @Param({"4", "10", "20"})
+    public int radius;
+    
+    @Param({"1", "3"})
+    public int layers;
+    
+    /**
+     *  The number of levels of child grids below the root grid.
+     */
+    @Param({"0", "1", "2"})
+    public int depth;
+    
+    @Param({"Straight", "Diagonal", "Jitter"})
+    public Path path;
+    
+    @Param({"Square", "Circle"})
+    public InterestShape shape;
+    
+    @Param({"0", "1"})
+    public int releaseMargin;
+
+    private static final float CELL_SIZE = 32;
+    
+    private Builder builder;
+    private PagedGrid root;
+    private float x;
+    private float z;
+    private int step;
+    private Random random;
+
+    /**
+     *  Builds references immediately on the thread that queues
+     *  them instead of handing them to the worker threads.
+     */
+    public static class SynchronousBuilder extends Builder {
+        public SynchronousBuilder() {
+            super("sync", 1);
+        }
+        
+        @Override
+        protected void execute( PrioritizedRef pr ) {
+            pr.run();
+        }
+        
+        @Override
+        protected boolean cancel( PrioritizedRef pr ) {
+            // Nothing is ever waiting to be built
+            return false;
+        }
+    }
+    
+    public static class NullZone extends AbstractZone {
+        public NullZone( Grid grid, int xCell, int yCell, int zCell ) {
+            super(grid, xCell, yCell, zCell);
+        }
+        
+        @Override
+        public void build() {
+        }
+        
+        @Override
+        public void apply( Builder builder ) {
+        }
+        
+        @Override
+        public void release( Builder builder ) {
+        }
+    }
+    
+    public static class NullZoneFactory implements ZoneFactory {
+        @Override
+        public Zone createZone( PagedGrid pg, int xCell, int yCell, int zCell ) {
+            return new NullZone(pg.getGrid(), xCell, yCell, zCell);
+        }
+    }
+ 
+    private static void drain( Builder builder ) {
+        while( builder.applyUpdates(Integer.MAX_VALUE) > 0 ) {
+        }
+    }
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        builder = new SynchronousBuilder();
+        ZoneFactory factory = new NullZoneFactory(); 
+        root = new PagedGrid(factory, builder, new Grid(CELL_SIZE, CELL_SIZE, CELL_SIZE), layers, radius);
+        root.setInterestShape(shape);
+        root.setReleaseMargin(releaseMargin);
+        
+        // Each child level has cells half the size of its parent's
+        PagedGrid parent = root;
+        float size = CELL_SIZE;
+        for( int i = 0; i < depth; i++ ) {
+            size *= 0.5f;
+            parent = new PagedGrid(parent, factory, builder, new Grid(size, size, size), layers, radius);
+            parent.setInterestShape(shape);
+            parent.setReleaseMargin(releaseMargin);
+        }
+        
+        random = new Random(0);
+        
+        // Start in the middle of a cell so that every step is exactly
+        // one crossing
+        x = CELL_SIZE * 0.5f;
+        z = CELL_SIZE * 0.5f;
+        root.setCenterWorldLocation(x, z);
+        drain(builder);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        root.release();
+        drain(builder);
+        builder.shutdown();
+    }
+ 
+    @Benchmark
+    public int crossing() {
+        step++;
+        switch( path ) {
+            case Straight:
+                x += CELL_SIZE;
+                break;
+            case Diagonal:
+                x += CELL_SIZE;
+                z += CELL_SIZE;
+                break;
+            case Jitter:
+                // Back and forth across the same boundary with a 
+                // little noise in the other direction
+                x += (step & 1) == 1 ? CELL_SIZE : -CELL_SIZE;
+                z = CELL_SIZE * (0.25f + 0.5f * random.nextFloat());
+                break;
+        }
+        root.setCenterWorldLocation(x, z);
+        drain(builder);
+        return root.getAppliedZoneCount();
+    }
+}
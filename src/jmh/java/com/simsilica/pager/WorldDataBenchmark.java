@@ -0,0 +1,143 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ *  Compares reading a random cell's world data through a mapped
+ *  WorldDataFile view with seeking and reading it into a heap array
+ *  the way stream based zone builds do.  Each operation reads one 
+ *  whole cell record and sums it as longs so that both versions touch
+ *  every byte.  The file is small enough to stay in the OS page cache
+ *  so this measures the copying and call overhead rather than the disk.
+ *
+ *  @author    Paul Speed
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldDataBenchmark {
+
+    @Param({"4096", "65536"})
+    public int recordSize;
+
+    private static final int CELLS = 16;
+
+    private File file;
+    private WorldDataFile data;
+    private RandomAccessFile stream;
+    private byte[] array;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("worlddata", ".bin");
+        Grid grid = new Grid(32, 32, 32);
+        WorldDataFile out = WorldDataFile.create(file, grid, ByteOrder.nativeOrder(), recordSize,
+                                                 0, 0, 0, CELLS, 1, CELLS);
+        Random fill = new Random(0);
+        for( int x = 0; x < CELLS; x++ ) {
+            for( int z = 0; z < CELLS; z++ ) {
+                ByteBuffer cell = out.getCell(x, 0, z);
+                while( cell.remaining() >= 8 ) {
+                    cell.putLong(fill.nextLong());
+                }
+            }
+        }
+        out.close();
+        
+        data = new WorldDataFile(file, grid);
+        stream = new RandomAccessFile(file, "r");
+        array = new byte[recordSize];
+        random = new Random(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        data.close();
+        stream.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public long mapped() {
+        ByteBuffer cell = data.getCell(random.nextInt(CELLS), 0, random.nextInt(CELLS));
+        long sum = 0;
+        for( int i = 0; i + 8 <= recordSize; i += 8 ) {
+            sum += cell.getLong(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        int x = random.nextInt(CELLS);
+        int z = random.nextInt(CELLS);
+        stream.seek(data.getOffset(x, 0, z));
+        stream.readFully(array);
+        ByteBuffer cell = ByteBuffer.wrap(array).order(ByteOrder.nativeOrder());
+        long sum = 0;
+        for( int i = 0; i + 8 <= recordSize; i += 8 ) {
+            sum += cell.getLong(i);
+        }
+        return sum;
+    }
+}
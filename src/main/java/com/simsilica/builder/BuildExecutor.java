@@ -0,0 +1,102 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+
+/**
+ *  The strategy that a Builder uses to run its build tasks on
+ *  background threads.  Implementations must run every task that
+ *  is executed exactly once unless it is removed first and should
+ *  run tasks with lower priority values first, at least approximately.
+ *  execute() must be thread safe.  It is called from the thread that 
+ *  manages the Builder but also from worker threads, including this
+ *  executor's own, when a StagedReference moves on to its next stage.
+ *  remove() and the reprioritize methods are only called from the thread 
+ *  that manages the Builder but may run at the same time as execute() 
+ *  calls from workers.
+ *
+ *  @author    Paul Speed
+ */
+public interface BuildExecutor {
+
+    /**
+     *  Queues the task to be run on a background thread.  The task's
+     *  priority has not necessarily been refreshed yet.  This may be
+     *  called from any thread.
+     */
+    public void execute( BuildTask task );
+
+    /**
+     *  Removes the task if it has not started running yet.  Returns
+     *  true if the task was removed and will not be run.
+     */
+    public boolean remove( BuildTask task );
+
+    /**
+     *  Refreshes the task's priority and moves it to its new place
+     *  if it is still queued.  Returns false if it wasn't queued.
+     */
+    public boolean reprioritize( BuildTask task );
+
+    /**
+     *  Refreshes the priority of every queued task.
+     */
+    public void reprioritizeAll();
+
+    /**
+     *  Pauses or resumes running queued tasks.  Tasks that are already
+     *  running are not affected.
+     */
+    public void setPaused( boolean paused );
+
+    public int getQueuedCount();
+
+    public int getPoolSize();
+
+    /**
+     *  Returns the approximate number of threads currently running tasks.
+     */
+    public int getActiveCount();
+
+    /**
+     *  Stops running queued tasks and interrupts running ones.
+     */
+    public void shutdown();
+
+    public boolean isShutdown();
+}
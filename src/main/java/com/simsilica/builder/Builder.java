@@ -39,20 +39,14 @@ package com.simsilica.builder;
 
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,34 +64,250 @@ public class Builder {
     static Logger log = LoggerFactory.getLogger(Builder.class);
 
     private static AtomicLong instanceCount = new AtomicLong();
+    
+    // The schedule key of queued disposals, lower than any that
+    // a SchedulingPolicy can return
+    private static final long DISPOSAL_KEY = Long.MIN_VALUE;
 
     private String name;
 
     private Map<BuilderReference,PrioritizedRef> refMap = new ConcurrentHashMap<BuilderReference,PrioritizedRef>();
-    private PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<Runnable>();
-    private ConcurrentLinkedQueue<PrioritizedRef> pausedItems = new ConcurrentLinkedQueue<PrioritizedRef>();
     private AtomicInteger pausedCount = new AtomicInteger();
 
     private PriorityBlockingQueue<PrioritizedRef> done = new PriorityBlockingQueue<PrioritizedRef>();
+    
+    // References waiting for release() are kept separately from the
+    // done pile so that they can be given their own budget in applyUpdates().
+    private PriorityBlockingQueue<PrioritizedRef> releases = new PriorityBlockingQueue<PrioritizedRef>();
 
-    private ThreadPoolExecutor executor;
+    private BuildExecutor executor;
+    
+    // Additional named pools for the stages of StagedReferences
+    private Map<String, BuildExecutor> stages = new ConcurrentHashMap<String, BuildExecutor>();
+ 
+    // Build statistics
+    private AtomicLong buildCount = new AtomicLong();
+    private AtomicLong buildTime = new AtomicLong();
+    private AtomicLong canceledCount = new AtomicLong();
+    private AtomicLong canceledTime = new AtomicLong();
+    private AtomicLong savedTime = new AtomicLong();
+    
+    // Null unless someone is interested in detailed timing
+    private volatile BuilderMetrics metrics;
+    
+    private volatile SchedulingPolicy schedulingPolicy = SchedulingPolicy.PRIORITY;
+    
+    // Flipped by applyUpdates(int) when 'max' is too small to share
+    // between applies and releases
+    private boolean releaseTurn;
+    
+    // Queue times given to the scheduling policy are relative to this
+    private final long epoch = System.nanoTime();
 
 
+    /**
+     *  Creates a builder that runs its builds on a PriorityExecutor with
+     *  the specified number of threads.
+     */
     public Builder( String name, int poolSize ) {        
+        this(name, new PriorityExecutor(name, poolSize));
+    }
+ 
+    /**
+     *  Creates a builder that runs its builds on a PriorityExecutor that 
+     *  adapts its number of threads between minPoolSize and maxPoolSize 
+     *  based on how much work is queued.
+     */
+    public Builder( String name, int minPoolSize, int maxPoolSize ) {        
+        this(name, new PriorityExecutor(name, minPoolSize, maxPoolSize));
+    }
+ 
+    /**
+     *  Creates a builder that runs its builds on the specified executor.
+     */
+    public Builder( String name, BuildExecutor executor ) {        
         this.name = name;
-        this.executor = new ThreadPoolExecutor( poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
-                                                (PriorityBlockingQueue<Runnable>)queue,
-                                                new BuilderThreadFactory() );
+        this.executor = executor;
+    }
+ 
+    public String getName() {
+        return name;
+    }
+ 
+    /**
+     *  Adds a named pool of worker threads that StagedReferences can
+     *  run their build stages on.  Each stage pool has its own priority
+     *  queue so that, for example, references waiting on I/O never keep
+     *  CPU bound work from running.  Stages should be added before any
+     *  references that use them are built.
+     */
+    public void addStage( String stageName, int poolSize ) {
+        addStage(stageName, new PriorityExecutor(name + "-" + stageName, poolSize));
+    }
+ 
+    /**
+     *  Adds a named stage that runs on the specified executor.
+     */
+    public void addStage( String stageName, BuildExecutor stageExecutor ) {
+        if( stageName == null ) {
+            throw new IllegalArgumentException("Stage name cannot be null");
+        }
+        if( stages.containsKey(stageName) ) {
+            throw new IllegalArgumentException("Stage already exists:" + stageName);
+        }
+        if( pausedCount.get() > 0 ) {
+            stageExecutor.setPaused(true);
+        }
+        stages.put(stageName, stageExecutor);
+    }
+ 
+    /**
+     *  Returns the executor for the specified stage or the main
+     *  executor if the stage name is null.
+     */   
+    public BuildExecutor getExecutor( String stageName ) {
+        if( stageName == null ) {
+            return executor;
+        }
+        BuildExecutor result = stages.get(stageName);
+        if( result == null ) {
+            throw new IllegalArgumentException("Unknown stage:" + stageName);
+        }
+        return result;
+    }
+    
+    public BuildExecutor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     *  Returns the number of references queued for the specified
+     *  stage pool or the main pool if the stage name is null.
+     */
+    public int getPendingCount( String stageName ) {
+        return getExecutor(stageName).getQueuedCount();
     }
  
     public int getPendingCount() {
-        return queue.size();
+        int result = executor.getQueuedCount();
+        for( BuildExecutor stage : stages.values() ) {
+            result += stage.getQueuedCount();
+        }
+        return result;
+    }
+    
+    /**
+     *  Returns the number of worker threads in the main pool plus
+     *  any stage pools.
+     */   
+    public int getPoolSize() {
+        int result = executor.getPoolSize();
+        for( BuildExecutor stage : stages.values() ) {
+            result += stage.getPoolSize();
+        }
+        return result;
+    }
+ 
+    /**
+     *  Returns the approximate number of worker threads that are
+     *  currently building.
+     */   
+    public int getActiveCount() {
+        int result = executor.getActiveCount();
+        for( BuildExecutor stage : stages.values() ) {
+            result += stage.getActiveCount();
+        }
+        return result;
+    }
+ 
+    /**
+     *  Sets the metrics object that will be given timing information
+     *  about builds, applies, and releases.  Set to null to turn
+     *  timing collection off, which is the default.
+     */   
+    public void setMetrics( BuilderMetrics metrics ) {
+        this.metrics = metrics;
+    }
+    
+    public BuilderMetrics getMetrics() {
+        return metrics;
+    }
+ 
+    /**
+     *  Sets the policy that decides the order in which pending references
+     *  are built.  The default is SchedulingPolicy.PRIORITY which builds
+     *  strictly in priority order.  References that are already pending
+     *  are resorted under the new policy.
+     */   
+    public void setSchedulingPolicy( SchedulingPolicy schedulingPolicy ) {
+        if( schedulingPolicy == null ) {
+            schedulingPolicy = SchedulingPolicy.PRIORITY;
+        }
+        this.schedulingPolicy = schedulingPolicy;
+        executor.reprioritizeAll();
+        for( BuildExecutor stage : stages.values() ) {
+            stage.reprioritizeAll();
+        }
+    }
+    
+    public SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
     }
     
     public int getManagedCount() {
         return refMap.size();
     }
  
+    /**
+     *  Returns the lifecycle state of the specified reference or null
+     *  if it isn't managed.
+     */
+    State getState( BuilderReference ref ) {
+        PrioritizedRef pr = refMap.get(ref);
+        return pr == null ? null : pr.state.get();
+    }
+ 
+    /**
+     *  Returns the number of builds that have run to completion.
+     */   
+    public long getBuildCount() {
+        return buildCount.get();
+    }
+ 
+    /**
+     *  Returns the total time in nanoseconds spent in builds that
+     *  ran to completion.
+     */   
+    public long getBuildTime() {
+        return buildTime.get();
+    }
+ 
+    /**
+     *  Returns the number of CancellableReference builds that stopped
+     *  early because their reference was released while building.
+     */   
+    public long getCanceledCount() {
+        return canceledCount.get();
+    }
+ 
+    /**
+     *  Returns the total time in nanoseconds spent in builds
+     *  before they were canceled.
+     */   
+    public long getCanceledTime() {
+        return canceledTime.get();
+    }
+ 
+    /**
+     *  Returns an estimate of the build time in nanoseconds that was 
+     *  saved by canceling builds early.  Each canceled build is assumed 
+     *  to have saved the difference between the average completed build 
+     *  time at that point and the time it had already spent.
+     */   
+    public long getSavedTime() {
+        return savedTime.get();
+    }
+ 
     public boolean isShutdown() {
         return executor.isShutdown();
     }
@@ -138,39 +348,66 @@ public class Builder {
         pr.markForBuild();
     }
  
+    /**
+     *  Queues a reference for apply() without ever calling its build()
+     *  method.  This is for references whose build results are already
+     *  available, for example from a cache.  The reference is then managed
+     *  like any other built reference and must eventually be released.
+     *  The reference must either be new to this builder or idle.
+     */
+    public void applyBuilt( BuilderReference ref ) {
+        if( log.isTraceEnabled() ) {
+            log.trace("applyBuilt(" + ref + ")" );
+        } 
+        PrioritizedRef pr = refMap.get(ref);
+        if( pr == null ) {
+            pr = new PrioritizedRef( ref );
+            refMap.put( ref, pr );
+        }
+        pr.markBuilt();
+    }
+ 
     protected void execute( PrioritizedRef pr ) {
-        if( pausedCount.get() == 0 ) {
-            if( log.isTraceEnabled() ) {
-                log.trace("-executing:" + pr.ref);
-            }
+        if( log.isTraceEnabled() ) {
+            log.trace("-executing:" + pr.ref);
+        }
+        pr.queuedTime = metrics != null ? System.nanoTime() : 0;
+        pr.scheduleTime = System.nanoTime() - epoch;
+        
+        if( pr.disposing ) {
+            // Disposals always run on the main pool
+            pr.executor = executor;
             executor.execute(pr);
-        } else {
-            if( log.isTraceEnabled() ) {
-                log.trace("-adding to paused items:" + pr.ref);
+            return;
+        }
+        
+        // Staged references start on their first stage's pool
+        pr.stage = 0;
+        pr.stageNames = null;
+        if( pr.ref instanceof StagedReference ) {
+            pr.stageNames = ((StagedReference)pr.ref).getStages();
+            if( pr.stageNames != null && pr.stageNames.length > 0 ) {
+                pr.executor = getExecutor(pr.stageNames[0]);
+                pr.executor.execute(pr);
+                return;
             }
-            // Just add it to the paused queue
-            pausedItems.add( pr );
         }
+        
+        // If we are paused then the executor will just hold onto it
+        pr.executor = executor;
+        executor.execute(pr);
     }
 
     protected boolean cancel( PrioritizedRef pr ) {
-        // Try to make sure it doesn't get executed
-        if( pausedCount.get() == 0 ) {
-            if( executor.remove(pr) ) {
-                if( log.isDebugEnabled() ) {
-                    log.debug( "canceled exec:" + pr.ref );        
-                }
-                return true;
-            } 
-        } else {
-            // Just remove it from the paused queue
-            if( pausedItems.remove(pr) ) {
-                if( log.isDebugEnabled() ) {
-                    log.debug( "canceled paused exec:" + pr.ref );        
-                }
-                return true;             
+        // Try to make sure it doesn't get executed.  It could be in
+        // any stage pool's queue.
+        BuildExecutor owner = pr.executor;
+        if( owner != null && owner.remove(pr) ) {
+            if( log.isDebugEnabled() ) {
+                log.debug( "canceled exec:" + pr.ref );        
             }
-        }
+            return true;
+        } 
         // Wasn't even pending but may be running already
         return false;
     }
@@ -205,18 +442,39 @@ public class Builder {
         return refMap.containsKey(ref);
     }
  
+    /**
+     *  Refreshes the priority of the specified reference from its
+     *  getPriority() method and moves it to its new place in the pending
+     *  queue if it is waiting to be built.  This is much cheaper than
+     *  pause() and resume() when priorities change because only the
+     *  reprioritized references are touched and the worker threads never
+     *  stop.  Returns true if the reference was pending.  References 
+     *  that are not pending pick up their latest priority the next 
+     *  time they are queued.
+     */
+    public boolean reprioritize( BuilderReference ref ) {
+        PrioritizedRef pr = refMap.get(ref);
+        if( pr == null ) {
+            return false;
+        }
+        BuildExecutor owner = pr.executor;
+        return owner != null && owner.reprioritize(pr);
+    }
+ 
     /**
      *  Returns true if this builder is currently paused.  A
      *  paused builder stops executing any new pending processes
-     *  until unpaused.  This is useful for resetting priorities.
+     *  until unpaused.
      */
     public boolean isPaused() {
         return pausedCount.get() > 0;
     }
     
     /**
-     *  Pauses the builder which tops executing any new pending processes
-     *  until unpaused.  This is useful for resetting priorities.
+     *  Pauses the builder which stops executing any new pending processes
+     *  until unpaused.  Pending references stay queued.  Note: it is no 
+     *  longer necessary to pause the builder to reset priorities.  
+     *  See reprioritize().
      */
     public void pause() {
         log.trace("pause()");
@@ -224,12 +482,10 @@ public class Builder {
             log.trace("already paused");
             return;
         }
-
-        // Shuffle all of the pending items from pending to paused.
-        PrioritizedRef ref;
-        while( (ref = (PrioritizedRef)queue.poll()) != null ) {
-            pausedItems.add(ref);
-        } 
+        executor.setPaused(true);
+        for( BuildExecutor stage : stages.values() ) {
+            stage.setPaused(true);
+        }
     }
  
     /**
@@ -246,28 +502,13 @@ public class Builder {
             return;            
         }
         
-        
-        // Refresh priority and re-add paused items
-        // We'll presort them into a temporary priority queue
-        // so that they go into the queue in order.  Otherwise, we may
-        // end up crunching on some out-of-order items right away and
-        // it looks strange.  The executor's queue wouldn't have had
-        // a chance to sort them any better yet because better candidates
-        // haven't been added yet.
-        if( pausedItems.isEmpty() ) {
-            return;
-        }
-        PriorityQueue<PrioritizedRef> temp = new PriorityQueue<PrioritizedRef>(pausedItems.size()); 
-        PrioritizedRef ref;
-        while( (ref = pausedItems.poll()) != null ) {
-            ref.resetPriority();
-            temp.add(ref);
-        }
-
-        // Now execute them for real
-        while( (ref = temp.poll()) != null ) {
-            ref.resetPriority();
-            executor.execute(ref);
+        // Refresh priority of everything that was held while
+        // we were paused and let the workers at them again.
+        executor.reprioritizeAll();
+        executor.setPaused(false);
+        for( BuildExecutor stage : stages.values() ) {
+            stage.reprioritizeAll();
+            stage.setPaused(false);
         }
     }
  
@@ -281,18 +522,32 @@ public class Builder {
      *  At the time this is called, 'max' elements are drained from the done
      *  queue for processing.  If any higher priority references finish during
      *  this processing they still won't be applied until the next time applyUpdates()
-     *  is called.
+     *  is called.  While releases are waiting, a quarter of 'max' (at least one)
+     *  is held back for them so that a steady stream of builds can't keep
+     *  released references around forever.  When 'max' is too small to split,
+     *  calls take turns starting with releases.  Any count that one kind
+     *  doesn't use goes to the other.
      *  Keep 'max' relatively small to avoid frame drops but keep it high enough
      *  that changes get applied in a timely manner.  This will be application
      *  dependent.
      */   
     public int applyUpdates( int max ) {
-        if( done.isEmpty() ) {
+        if( done.isEmpty() && releases.isEmpty() ) {
             return 0;
         }
         
+        // Hold back part of the count for releases if there are any
+        int releaseShare = 0;
+        if( !releases.isEmpty() ) {
+            releaseShare = Math.max(1, max / 4);
+            if( releaseShare >= max ) {
+                releaseTurn = !releaseTurn;
+                releaseShare = releaseTurn ? max : 0;
+            }
+        }
+        
         ArrayList<PrioritizedRef> temp = new ArrayList<PrioritizedRef>();
-        int count = done.drainTo(temp, max);
+        done.drainTo(temp, max - releaseShare);
         int processed = 0;
         
         for( PrioritizedRef pr : temp ) {
@@ -302,22 +557,124 @@ public class Builder {
             pr.apply();
             processed++;
         }
+        
+        // Releases get their share plus anything the applies didn't use
+        if( processed < max ) {
+            temp.clear();
+            releases.drainTo(temp, max - processed);
+            for( PrioritizedRef pr : temp ) {
+                if( log.isTraceEnabled() ) {
+                    log.trace("Releasing:" + pr.ref + "  state:" + pr.state.get());
+                }            
+                pr.apply();
+                processed++;
+            }
+        }
+        
+        // And if there weren't enough releases to fill their share then
+        // the applies can have the rest
+        if( processed < max && !done.isEmpty() ) {
+            temp.clear();
+            done.drainTo(temp, max - processed);
+            for( PrioritizedRef pr : temp ) {
+                if( log.isTraceEnabled() ) {
+                    log.trace("Applying updates for:" + pr.ref + "  state:" + pr.state.get());
+                }            
+                pr.apply();
+                processed++;
+            }
+        }
         return processed;        
     }
  
+    /**
+     *  Applies done references until 'applyBudget' nanoseconds have been
+     *  spent and then releases released references until 'releaseBudget'
+     *  nanoseconds have been spent.  This is an alternative to applyUpdates(int)
+     *  for when the cost of individual apply() calls varies too much for
+     *  a fixed count to be useful.  Budgets are checked before each reference
+     *  is processed so the last reference processed may overrun the budget.
+     *  At least one reference of each kind is always processed if any are
+     *  waiting, even with a budget of 0, so that neither kind can stall.
+     *  Releases have their own budget so that a large number of releases
+     *  cannot prevent newly built references from being applied and vice versa.
+     *  Unlike applyUpdates(int), references that finish building while
+     *  this method is running may also be applied if there is budget left.
+     */
+    public int applyUpdates( long applyBudget, long releaseBudget ) {
+        if( done.isEmpty() && releases.isEmpty() ) {
+            return 0;
+        }
+        
+        long time = System.nanoTime();
+        long end = time + applyBudget;
+        PrioritizedRef pr;
+        int applied = 0;
+        while( (applied == 0 || time < end) && (pr = done.poll()) != null ) {
+            if( pr.state.get() == State.Release ) {
+                // Released while waiting in the done pile... it will
+                // be handled with the other releases.
+                releases.put(pr);
+                continue;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Applying updates for:" + pr.ref + "  state:" + pr.state.get());
+            }            
+            pr.apply();
+            applied++;
+            time = System.nanoTime();
+        }
+        
+        int released = 0;
+        end = time + releaseBudget;
+        while( (released == 0 || time < end) && (pr = releases.poll()) != null ) {
+            if( log.isTraceEnabled() ) {
+                log.trace("Releasing:" + pr.ref + "  state:" + pr.state.get());
+            }            
+            pr.apply();
+            released++;
+            time = System.nanoTime();
+        }
+        return applied + released;
+    }
+ 
     /**
      *  Shuts down the thread pool and stops accepting new tasks for execution.
      *  applyUpdates() can stil be called but no new references will be completed
      *  after the currently in-process references are done.
      */   
     public void shutdown() {
-        executor.shutdownNow();
+        executor.shutdown();
+        for( BuildExecutor stage : stages.values() ) {
+            stage.shutdown();
+        }
 
         if( log.isTraceEnabled() ) {
             log.trace("Builder unreleased references:" + refMap.keySet());
         }        
     }
     
+    protected void buildFinished( long nanos, boolean canceled ) {
+        BuilderMetrics m = metrics;
+        if( m != null ) {
+            m.record(canceled ? BuilderMetrics.Timing.CanceledBuild : BuilderMetrics.Timing.Build, nanos);
+        }
+        if( !canceled ) {
+            buildCount.incrementAndGet();
+            buildTime.addAndGet(nanos);
+            return;
+        }
+        canceledCount.incrementAndGet();
+        canceledTime.addAndGet(nanos);
+        long count = buildCount.get();
+        if( count > 0 ) {
+            long average = buildTime.get() / count;
+            if( average > nanos ) {
+                savedTime.addAndGet(average - nanos);
+            }
+        }
+    }
+    
     protected void handleError( Throwable t ) {
         log.error( "Uncaught exception in worker thread", t );
     }
@@ -326,18 +683,51 @@ public class Builder {
         Pending, Processing, Done, Release, Reprocess, Idle
     }
  
-    protected class PrioritizedRef implements Runnable, Comparable<PrioritizedRef> {
+    protected class PrioritizedRef implements BuildTask, Comparable<PrioritizedRef>, CancellationToken {
  
         private long sequence = instanceCount.getAndIncrement();
         private BuilderReference ref;
         private AtomicReference<State> state = new AtomicReference<State>(State.Idle);        
         private int priority;
         
+        // The executor this reference was last handed to
+        private volatile BuildExecutor executor;
+        
+        // Managed by the PriorityBucketQueue while this reference
+        // is queued for building.
+        volatile PriorityBucketQueue owner;
+        volatile LinkedHashSet<PrioritizedRef> bucket;
+        long bucketKey;
+        
+        // When the reference was queued to build for the scheduling
+        // policy.  Kept through reprioritizing and later stages.
+        private volatile long scheduleTime;
+        private volatile long scheduleKey;
+        
         // Set to true if the reference has had build() called even
         // once.
         private AtomicBoolean built = new AtomicBoolean(false);
-
-        private ReentrantLock stateLock = new ReentrantLock(); 
+        
+        // Set to true when a build in progress has been told that
+        // it was canceled. 
+        private volatile boolean canceled;
+        
+        // Timestamps for metrics.  These are only set when the
+        // builder has metrics.
+        private volatile long queuedTime;
+        private volatile long doneTime;
+ 
+        // The stages of a StagedReference and the one that is currently
+        // running or queued.  Only touched by whichever thread has the
+        // reference and handed off through the stage queues... or by
+        // markForRelease() once it has pulled the reference out of one.
+        private String[] stageNames;
+        private int stage;
+        private long stageBuildTime;
+        
+        // Set once a released DisposableReference has been handed 
+        // back to the executor for disposeReleased()
+        private volatile boolean disposing;
 
         public PrioritizedRef( BuilderReference ref ) {
             this.ref = ref;
@@ -351,190 +741,230 @@ public class Builder {
         }
 
         public void markForBuild() {
-            if( state.get() == State.Release ) {
-                throw new IllegalStateException("Reference already released:" + ref);
-            }
-            
-            // If we are pending or already reprocessing 
-            if( state.get() == State.Pending || state.get() == State.Reprocess ) {
-                // This is the one case we can "early out"
-                // without getting the lock.  The reason this is
-                // not a race condition is because markForBuild() is only
-                // called from the apply thread.  The only way it could get 
-                // to either of those states is from apply() which is also
-                // called on this thread.  There is a small race condition
-                // where the builder thread may change state from pending to
-                // processing right after we check... but that's ok because
-                // that means it's doing what we were already going to ask it
-                // to do.
-                if( log.isTraceEnabled() ) {
-                    log.trace("markForBuild() state already set for building:" + state + "  ref:" + ref);
-                }                 
-                return;
-            }
-            stateLock.lock();
-            try {
-                if( log.isTraceEnabled() ) {
-                    log.trace("markForBuild() from:" + state.get() + "  ref:" + ref);
-                }            
-                // At this point we are either done, processing,
-                // or already marked for reprocessing.  We are the 
-                // only method that would set pending and markForBuild()
-                // is always called from the apply thread so there 
-                // won't be a race there.
-                switch( state.get() ) {
+            // All of the transitions here are done with compare-and-set
+            // on the state.  markForBuild() is only ever called from the 
+            // apply thread and the only states that can change out from
+            // under us are Pending -> Processing and Processing -> Done which
+            // are made by the builder threads.  If our CAS fails then we just
+            // reevaluate from the new state.
+            while( true ) {
+                State current = state.get();
+                switch( current ) {
+                    case Release:
+                        throw new IllegalStateException("Reference already released:" + ref);
+                    case Pending:
+                    case Reprocess:
+                        // If we are pending or already reprocessing then there
+                        // is nothing to do.  There is a small race condition
+                        // where the builder thread may change state from pending to
+                        // processing right after we check... but that's ok because
+                        // that means it's doing what we were already going to ask it
+                        // to do.
+                        if( log.isTraceEnabled() ) {
+                            log.trace("markForBuild() state already set for building:" + current + "  ref:" + ref);
+                        }                 
+                        return;
                     case Done:
                         // We are already in the done pile so it's
                         // good enough just to mark for reprocess and let 
                         // apply relaunch us.
-                        state.set(State.Reprocess);
-                        break;
                     case Processing:
                         // Just set the state and let the normal apply
                         // pass set to pending.  When we are done processing
                         // then this reference will be put in the done pile.
-                        // There is no race because we've locked the state lock
-                        // and so will the markDone() method.
-                        state.set(State.Reprocess);
-                        break;
+                        // If the builder thread beats us to Done then we'll
+                        // just go around again.
+                        if( !transition(current, State.Reprocess, "markForBuild()") ) {
+                            continue;
+                        }
+                        return;
                     case Idle:
                         // The ref is not in the done pile and not being processed
-                        // so we can just execute it and mark pending
-                        state.set(State.Pending);
+                        // so we can just execute it and mark pending.  Nothing else
+                        // moves a reference out of Idle.
+                        if( !transition(current, State.Pending, "markForBuild()") ) {
+                            continue;
+                        }
                         execute(this);
-                        break;
+                        return;
                     default:
-                        throw new IllegalStateException("Unexpected state in markForBuild():" + state);
+                        throw new IllegalStateException("Unexpected state in markForBuild():" + current);
                 }
-                if( log.isTraceEnabled() ) {
-                    log.trace("to state:" + state.get() + "  ref:" + ref);
-                }
-            } finally {
-                stateLock.unlock();
             }
         }
         
         public void markForRelease() {
-            if( state.get() == State.Release ) {
-                throw new IllegalStateException("Reference already released:" + ref);
-            }
-            
-            stateLock.lock();
-            try {
-                if( log.isTraceEnabled() ) {
-                    log.trace("markForRelease() from:" + state.get() + "  ref:" + ref);
-                }            
-                switch( state.get() ) {
+            while( true ) {
+                State current = state.get();
+                switch( current ) {
+                    case Release:
+                        throw new IllegalStateException("Reference already released:" + ref);
                     case Pending:
                         // Cancel the task.  It is possible that the task cannot
-                        // be canceled because it has already begun executing and
-                        // is now waiting for the lock we are holding.  So we always
-                        // must mark it for release and let the run() method
-                        // put it in the done pile.
-                        state.set(State.Release);
+                        // be canceled because it has already been taken by a
+                        // builder thread.  So we always must mark it for release 
+                        // first and then either the builder thread will see the
+                        // release in markProcessing() or we will have canceled it.
+                        if( !transition(current, State.Release, "markForRelease()") ) {
+                            continue;
+                        }
                         if( cancel(this) ) {
                             // However, if we DID cancel it then there is nothing around
-                            // to put this in the done pile... so we must
-                            done.put(this);
+                            // to put this in the release pile... so we must
+                            releases.put(this);
                         }
-                        break;
+                        return;
                     case Processing:
-                        // All we can do is mark the state to release and
-                        // let the apply() pass fix it up.
-                        state.set(State.Release);
-                        break;
+                        // Mostly all we can do is mark the state to release and
+                        // let markDone() put us in the release pile.  A
+                        // CancellableReference will see it and stop early.
+                        if( !transition(current, State.Release, "markForRelease()") ) {
+                            continue;
+                        }
+                        // But a StagedReference may be waiting in a later stage's
+                        // queue.  If we can pull it out then no worker will ever
+                        // see it again and we have to finish it ourselves.
+                        if( cancel(this) ) {
+                            canceled = true;
+                            finishBuild();
+                        }
+                        return;
                     case Reprocess:
                     case Done:
-                        // We are already waiting in the done pile so we only
-                        // need to change state
-                        state.set(State.Release);
-                        break; 
+                        // We are already waiting in the done pile (or will be) so 
+                        // we only need to change state
+                        if( !transition(current, State.Release, "markForRelease()") ) {
+                            continue;
+                        }
+                        return; 
                     case Idle:
-                        // We need to be put in the done pile and marked for
+                        // We need to be put in the release pile and marked for
                         // release
-                        state.set(State.Release);
-                        done.put(this);
-                        break;
+                        if( !transition(current, State.Release, "markForRelease()") ) {
+                            continue;
+                        }
+                        releases.put(this);
+                        return;
                     default:
-                        throw new IllegalStateException("Unexpected state in markForRelease():" + state);
+                        throw new IllegalStateException("Unexpected state in markForRelease():" + current);
                 }
-                if( log.isTraceEnabled() ) {
-                    log.trace("to state:" + state.get() + "  ref:" + ref);
-                }                
-            } finally {
-                stateLock.unlock();
-            }           
+            }
         }
 
         public void apply() {
             
-            // There is no way to 'early out' here because in call cases
-            // we may be racing with the builder thread for 'mark done' state.
             // By the time apply() is called, this reference has already been
-            // removed from the done pile.
-            
-            stateLock.lock();
-            try {
-                if( log.isTraceEnabled() ) {
-                    log.trace("apply() from:" + state.get() + "  ref:" + ref);
-                }            
-                switch( state.get() ) {
-                    case Done:
-                        // The classic
-                        ref.apply(Builder.this);
-                        
-                        // We're just hanging around now
-                        state.set(State.Idle);
-                        break;
-                    case Release:
-                        // Release the reference and remove our tracking
-                        refMap.remove(ref);
-                        if( built.get() ) {
-                            // Only release if it has been built at least once
-                            ref.release(Builder.this);
-                        } else {
-                            if( log.isTraceEnabled() ) {
-                                log.trace("Released object was never built:" + ref);
-                            }
+            // removed from the done pile and the builder threads are done with
+            // it.  Only the apply thread can change the state now... which 
+            // includes the reference's own apply() calling back into the builder.
+            State current = state.get();            
+            if( log.isTraceEnabled() ) {
+                log.trace("apply() from:" + current + "  ref:" + ref);
+            }            
+            BuilderMetrics m = metrics;
+            long start = m != null ? System.nanoTime() : 0;
+            switch( current ) {
+                case Done:
+                    // The classic
+                    applyRef(m, start);
+                    
+                    // We're just hanging around now
+                    if( !transition(State.Done, State.Idle, "apply()") ) {
+                        // The reference was rebuilt or released during its
+                        // own apply()
+                        requeue();
+                    }
+                    break;
+                case Release:
+                    // Release the reference and remove our tracking
+                    refMap.remove(ref);
+                    if( built.get() ) {
+                        // Only release if it has been built at least once
+                        ref.release(Builder.this);
+                        if( m != null ) {
+                            m.record(BuilderMetrics.Timing.Release, System.nanoTime() - start);
                         }
-                        break;
-                    case Reprocess:
-                        // Always apply before rebuilding
-                        ref.apply(Builder.this);
-                        state.set(State.Idle);
+                        if( ref instanceof DisposableReference 
+                            && ((DisposableReference)ref).needsDisposal() ) {
+                            queueDisposal();
+                        }
+                    } else {
+                        if( log.isTraceEnabled() ) {
+                            log.trace("Released object was never built:" + ref);
+                        }
+                    }
+                    break;
+                case Reprocess:
+                    // Always apply before rebuilding
+                    applyRef(m, start);
+                    if( transition(State.Reprocess, State.Idle, "apply()") ) {
                         markForBuild();
-                        break;
-                    case Pending:
-                    case Processing:
-                    case Idle:
-                    default:
-                        throw new IllegalStateException("Unexpected state in apply():" + state + ", ref:" + ref);
-                }
-                if( log.isTraceEnabled() ) {
-                    log.trace("to state:" + state.get() + "  ref:" + ref);
-                }                
-            } finally {
-                stateLock.unlock();
+                    } else {
+                        requeue();
+                    }
+                    break;
+                case Pending:
+                case Processing:
+                case Idle:
+                default:
+                    throw new IllegalStateException("Unexpected state in apply():" + current + ", ref:" + ref);
+            }
+        }
+ 
+        private void applyRef( BuilderMetrics m, long start ) {
+            if( m == null ) {
+                ref.apply(Builder.this);
+                return;
+            }
+            if( doneTime != 0 ) {
+                m.record(BuilderMetrics.Timing.DoneWait, start - doneTime);
+            }
+            ref.apply(Builder.this);
+            m.record(BuilderMetrics.Timing.Apply, System.nanoTime() - start);
+        }
+ 
+        /**
+         *  Called when the state was changed during the reference's own
+         *  apply() such that we couldn't go to Idle. 
+         */
+        private void requeue() {
+            State current = state.get();
+            switch( current ) {
+                case Reprocess:
+                    state.set(State.Idle);
+                    markForBuild();
+                    break;
+                case Release:
+                    releases.put(this);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected state after apply():" + current + ", ref:" + ref);
             }
         }
 
-        protected void markProcessing() {
+        /**
+         *  Called from the builder thread before build().  Returns false
+         *  if the reference should not be built because it was released
+         *  while waiting in the queue.
+         */
+        protected boolean markProcessing() {
         
             // This is called from the builder thread.  Our state
             // should be pending but there could have been calls from
             // the apply() thread while we were queuing up that changed
             // that state.
-            
-            stateLock.lock();
-            try {
-                if( log.isTraceEnabled() ) {
-                    log.trace("markProcessing() from:" + state.get() + "  ref:" + ref);
-                }            
-                switch( state.get() ) {
+            while( true ) {
+                State current = state.get();            
+                switch( current ) {
                     case Pending:
                         // Perfect.
-                        state.set(State.Processing);
-                        break;
+                        if( !transition(current, State.Processing, "markProcessing()") ) {
+                            continue;
+                        }
+                        // Track that has been built at least once
+                        built.set(true);
+                        canceled = false;
+                        return true;
                     case Processing:
                         throw new IllegalStateException("Double-processing detected for:" + ref);
                     case Done:
@@ -544,10 +974,10 @@ public class Builder {
                         throw new IllegalStateException("Process-overlapping done detected for:" + ref);
                     case Release:
                         // This reference was marked for release after we were
-                        // queued but before our lock.  We should avoid processing
-                        // it but we still need to add ourselves to the done pile.
+                        // queued but before we got to it.  We should avoid processing
+                        // it but we still need to add ourselves to the release pile.
                         markDone();
-                        return;
+                        return false;
                     case Reprocess:
                         // This shouldn't happen in markProcessing because a Pending
                         // reference would never have made it to the state change.
@@ -555,16 +985,22 @@ public class Builder {
                         // Nor should this because the only transition to Idle is
                         // from done states.
                     default:
-                        throw new IllegalStateException("Unexpected state in apply():" + state + ", ref:" + ref);
-                }                                                
-                // Track that has been built at least once
-                built.set(true);
-                if( log.isTraceEnabled() ) {
-                    log.trace("to state:" + state.get() + "  ref:" + ref);
-                }                
-            } finally {
-                stateLock.unlock();
+                        throw new IllegalStateException("Unexpected state in markProcessing():" + current + ", ref:" + ref);
+                }
+            }
+        }
+        
+        public void markBuilt() {
+            // Only Idle references can skip straight to the done pile.  Idle
+            // is only ever left from the apply thread so there is no race.
+            State current = state.get();
+            if( current != State.Idle ) {
+                throw new IllegalStateException("Unexpected state in markBuilt():" + current + ", ref:" + ref);
             }
+            transition(current, State.Done, "markBuilt()");
+            built.set(true);
+            doneTime = metrics != null ? System.nanoTime() : 0;
+            done.put(this);
         }
         
         protected void markDone() {
@@ -572,25 +1008,27 @@ public class Builder {
             // This is called from the builder thread when processing
             // has completed.  The state may have been changed while we
             // were processing this reference
-            
-            stateLock.lock();
-            try {
+            while( true ) {
+                State current = state.get();
                 if( log.isTraceEnabled() ) {
-                    log.trace("markDone() from:" + state.get() + "  ref:" + ref);
+                    log.trace("markDone() from:" + current + "  ref:" + ref);
                 }            
-                switch( state.get() ) {
+                switch( current ) {
                     case Pending:
                         // There is no case where we could possible get to pending
                         // from processing or any of its follow-on states.
                         // Only Idle goes to Pending and only Done goes to Idle
                         // and we are the only place that marks done.
-                        throw new IllegalStateException("Unexpected state in markDone():" + state + ", ref:" + ref);
+                        throw new IllegalStateException("Unexpected state in markDone():" + current + ", ref:" + ref);
                     case Processing:
                         // The normal state change.  We need to mark ourselves done
                         // and add ourselves to the done pile
-                        state.set(State.Done);
+                        if( !transition(current, State.Done, "markDone()") ) {
+                            continue;
+                        }
+                        doneTime = metrics != null ? System.nanoTime() : 0;
                         done.put(this);
-                        break;
+                        return;
                     case Done:
                         // The builder threads are the only thing that would have
                         // set 'done' state so somehow processing overlapped... which is
@@ -598,71 +1036,187 @@ public class Builder {
                         throw new IllegalStateException("Process-overlapping done detected for:" + ref);
                     case Release:
                         // Ok, we were marked for release while we were processing.
-                        // Just put this in the 'done' pile.
-                        done.put(this);
-                        break;
+                        // Just put this in the 'release' pile.  Release is final so
+                        // nothing can change it now.
+                        releases.put(this);
+                        return;
                     case Reprocess: 
                         // We were marked for reprocessing while we were processing.
-                        // This is also ok
+                        // This is also ok.  If we are marked for release after this
+                        // then apply() will still do the right thing.
+                        doneTime = metrics != null ? System.nanoTime() : 0;
                         done.put(this);
-                        break;
+                        return;
                     case Idle:
                         // No way we can get to Idle without going through Done first.
                         // Only builder threads set done state so that means another
                         // thread processed and set done around us and the apply() was even
                         // run.  So many state checks had to fail.
                     default:
-                        throw new IllegalStateException("Unexpected state in apply():" + state + ", ref:" + ref);
+                        throw new IllegalStateException("Unexpected state in markDone():" + current + ", ref:" + ref);
                 }
-                if( log.isTraceEnabled() ) {
-                    log.trace("to state:" + state.get() + "  ref:" + ref);
-                }                
-            } finally {
-                stateLock.unlock();
             }
         }
-
+ 
+        private boolean transition( State from, State to, String method ) {
+            if( !state.compareAndSet(from, to) ) {
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace(method + " from:" + from + " to state:" + to + "  ref:" + ref);
+            }
+            return true;
+        }
         public final void resetPriority() {
             this.priority = ref.getPriority();
+            if( disposing ) {
+                // Disposals go ahead of everything else no matter
+                // what the scheduling policy thinks
+                this.scheduleKey = DISPOSAL_KEY;
+            } else {
+                this.scheduleKey = schedulingPolicy.getScheduleKey(priority, scheduleTime);
+            }
+        }
+        
+        public int getPriority() {
+            return priority;
+        }
+ 
+        public long getScheduleKey() {
+            return scheduleKey;
         }
 
         @Override
         public int compareTo( PrioritizedRef pr ) {
-            int diff = priority - pr.priority;
+            int diff = Integer.compare(priority, pr.priority);
             if( diff == 0 )
-                diff = (int)(sequence - pr.sequence);
+                diff = Long.compare(sequence, pr.sequence);
             return diff;
         }
 
+        /**
+         *  Returns true if this reference has been released while
+         *  being built.
+         */
+        @Override
+        public boolean isCanceled() {
+            if( state.get() != State.Release ) {
+                return false;
+            }
+            canceled = true;
+            return true;
+        }
+
+        /**
+         *  Queues the next stage of a StagedReference on its pool.  Returns
+         *  false if that wasn't possible.  This is called from the worker
+         *  thread that ran the last stage, which the BuildExecutor contract
+         *  allows for execute().
+         */
+        private boolean queueNextStage() {
+            stage++;
+            try {
+                queuedTime = metrics != null ? System.nanoTime() : 0;
+                executor = getExecutor(stageNames[stage]);
+                executor.execute(this);
+                return true;
+            } catch( RuntimeException e ) {
+                // Unknown stage or we are shutting down
+                handleError(e);
+                return false;
+            }
+        }
+ 
+        /**
+         *  Queues a released DisposableReference for its disposeReleased().
+         *  This reference is no longer in the ref map so nothing else will
+         *  touch it.  If the executor won't take it then it is disposed
+         *  right here.
+         */
+        private void queueDisposal() {
+            disposing = true;
+            try {
+                execute(this);
+            } catch( RuntimeException e ) {
+                if( log.isDebugEnabled() ) {
+                    log.debug("Disposing on calling thread:" + ref, e);
+                }
+                runDisposal();
+            }
+        }
+        
+        private void runDisposal() {
+            BuilderMetrics m = metrics;
+            long start = m != null ? System.nanoTime() : 0;
+            try {
+                ((DisposableReference)ref).disposeReleased(Builder.this);
+            } catch( Exception e ) {
+                handleError(e);
+            }
+            if( m != null ) {
+                m.record(BuilderMetrics.Timing.Dispose, System.nanoTime() - start);
+            }
+        }
+ 
         @Override
         public void run() {
+            if( disposing ) {
+                runDisposal();
+                return;
+            }
  
-            markProcessing();
+            // Only the first stage is a real state change.  The
+            // reference stays in Processing through the rest.
+            if( stage == 0 && !markProcessing() ) {
+                // Released before we could build it
+                return;
+            }
+            if( stage > 0 && isCanceled() ) {
+                // Released while waiting for this stage so skip the rest
+                finishBuild();
+                return;
+            }
+            long start = System.nanoTime();
+            if( queuedTime != 0 ) {
+                BuilderMetrics m = metrics;
+                if( m != null ) {
+                    m.record(BuilderMetrics.Timing.QueueWait, start - queuedTime);
+                }
+            }
+            boolean next = false;
             try {
-                ref.build();
+                if( stageNames != null && stageNames.length > 0 ) {
+                    next = ((StagedReference)ref).build(stage, this)
+                            && stage + 1 < stageNames.length
+                            && !isCanceled(); 
+                } else if( ref instanceof CancellableReference ) {
+                    ((CancellableReference)ref).build(this);
+                } else {
+                    ref.build();
+                }
             } catch( Exception e ) {
                 handleError(e);                
-            } finally {            
-                markDone();                      
+            } finally {
+                stageBuildTime += System.nanoTime() - start;
+                if( !next || !queueNextStage() ) {
+                    finishBuild();
+                }
             } 
         }
-    }
-    
-    private class BuilderThreadFactory implements ThreadFactory {
-        
-        @Override
-        public Thread newThread( Runnable r ) {
-            Thread result = Executors.defaultThreadFactory().newThread(r);
-            
-            String s = result.getName();
-            result.setName(name + "[" + s + "]");
-            result.setDaemon(true);
-            
-            log.info("Created thread:" + result);
-                        
-            return result;            
+ 
+        /**
+         *  Records the build time across all stages and moves the reference
+         *  on to the done or release pile.  Called by whichever thread has
+         *  the reference at the end of its build.
+         */
+        private void finishBuild() {
+            long total = stageBuildTime;
+            stageBuildTime = 0;
+            stage = 0;
+            buildFinished(total, canceled);            
+            markDone();
         }
-    } 
+    }
 }
 
 
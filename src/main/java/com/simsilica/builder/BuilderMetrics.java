@@ -0,0 +1,93 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+
+/**
+ *  Receives timing information from a Builder.  Set with
+ *  Builder.setMetrics().  When no metrics are set the Builder skips
+ *  gathering the timing information altogether.  Implementations
+ *  are called from both the worker threads and the thread calling
+ *  applyUpdates() and so must be thread safe and should be fast.
+ *
+ *  @author    Paul Speed
+ */
+public interface BuilderMetrics {
+
+    public enum Timing {
+        /**
+         *  Time a reference spent in the pending queue before
+         *  a worker started building it.
+         */
+        QueueWait,
+        
+        /**
+         *  Time spent in build() for builds that ran to completion.
+         */
+        Build,
+        
+        /**
+         *  Time spent in build() for builds that stopped early
+         *  because they were canceled.
+         */
+        CanceledBuild,
+        
+        /**
+         *  Time a built reference spent in the done pile before
+         *  being applied.
+         */
+        DoneWait,
+        
+        /**
+         *  Time spent in apply().
+         */
+        Apply,
+        
+        /**
+         *  Time spent in release().
+         */
+        Release,
+        
+        /**
+         *  Time spent in disposeReleased() for DisposableReferences.
+         */
+        Dispose
+    }
+
+    public void record( Timing timing, long nanos );
+}
@@ -44,8 +44,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  *  Manages a Builder instance making sure applyUpdates() is
- *  called once per frame with a defined max value.  This state
- *  also does some builder-related cleanup processing in cleanup()
+ *  called once per frame with a defined max value or time budget.
+ *  This state also does some builder-related cleanup processing in cleanup()
  *  by processing any pending updates before returning.
  *
  *  @author    Paul Speed
@@ -57,6 +57,17 @@ public class BuilderState extends BaseAppState {
     private Builder builder;
     private int maxUpdates; 
     
+    // Time budget settings, in nanoseconds.  An apply budget of 0
+    // means that maxUpdates is used instead.
+    private long applyBudget;
+    private long releaseBudget;
+    
+    // Adaptive budget settings, in nanoseconds.  A target frame time
+    // of 0 means the apply budget is not adjusted.
+    private long targetFrameTime;
+    private long minApplyBudget;
+    private long maxApplyBudget;
+    
     public BuilderState( int poolSize, int maxUpdates ) {
         this("Builder", poolSize, maxUpdates);
     }
@@ -81,6 +92,70 @@ public class BuilderState extends BaseAppState {
     public int getMaxUpdates() {
         return maxUpdates;
     }
+ 
+    /**
+     *  Switches this state to time-budgeted updates where references
+     *  are applied until 'applyBudget' nanoseconds have been spent and
+     *  releases are processed until 'releaseBudget' nanoseconds have
+     *  been spent.  At least one of each is processed every frame if any
+     *  are waiting, even if its budget is 0.  Passing an apply budget of 0 
+     *  or less switches back to using the max updates count and also turns
+     *  off adaptive budgeting, which would otherwise put the budget back.
+     *  See Builder.applyUpdates(long, long). 
+     */
+    public void setUpdateBudget( long applyBudget, long releaseBudget ) {
+        this.applyBudget = Math.max(0, applyBudget);
+        this.releaseBudget = Math.max(0, releaseBudget);
+        if( this.applyBudget == 0 ) {
+            this.targetFrameTime = 0;
+        }
+    }
+ 
+    /**
+     *  Returns the current apply budget in nanoseconds or 0 if updates
+     *  are limited by count.  When adaptive budgeting is enabled, this
+     *  is the budget that will be used for the next frame.
+     */   
+    public long getApplyBudget() {
+        return applyBudget;
+    }
+    
+    public long getReleaseBudget() {
+        return releaseBudget;
+    }
+ 
+    /**
+     *  Enables adaptive time budgeting where the apply budget is adjusted
+     *  every frame between 'minBudget' and 'maxBudget' nanoseconds based
+     *  on how the last frame's time compares to 'targetFrameTime'
+     *  nanoseconds.  Frames that run over the target halve the budget and
+     *  frames that make the target grow it by a fraction of the budget range.
+     *  This also switches this state to time-budgeted updates if it isn't
+     *  already, in which case releases are given 'minBudget' nanoseconds
+     *  per frame unless a release budget was already set.  Passing a target
+     *  frame time of 0 or less turns adaptive budgeting off and leaves the 
+     *  current budgets as they are.
+     */
+    public void setAdaptiveBudget( long targetFrameTime, long minBudget, long maxBudget ) {
+        if( targetFrameTime <= 0 ) {
+            this.targetFrameTime = 0;
+            return;
+        }
+        if( minBudget <= 0 || maxBudget < minBudget ) {
+            throw new IllegalArgumentException("Invalid budget range:" + minBudget + " to " + maxBudget);
+        }
+        this.targetFrameTime = targetFrameTime;
+        this.minApplyBudget = minBudget;
+        this.maxApplyBudget = maxBudget;
+        this.applyBudget = Math.min(maxBudget, Math.max(minBudget, applyBudget));
+        if( releaseBudget <= 0 ) {
+            this.releaseBudget = minBudget;
+        }
+    }
+    
+    public long getTargetFrameTime() {
+        return targetFrameTime;
+    }
 
     /**
      *  Returns the managed Builder object for queing BuilderReferences to be 
@@ -123,8 +198,26 @@ public class BuilderState extends BaseAppState {
     }
 
     @Override
-    public void update( float tpf ) {       
-        builder.applyUpdates(maxUpdates);
+    public void update( float tpf ) {
+        if( targetFrameTime > 0 ) {
+            adaptBudget((long)(tpf * 1000000000.0));
+        }
+        if( applyBudget > 0 ) {
+            builder.applyUpdates(applyBudget, releaseBudget);
+        } else {       
+            builder.applyUpdates(maxUpdates);
+        }
+    }
+ 
+    protected void adaptBudget( long frameTime ) {
+        if( frameTime > targetFrameTime ) {
+            // Back off quickly when we've blown the frame
+            applyBudget = Math.max(minApplyBudget, applyBudget / 2);
+        } else {
+            // And creep back up slowly
+            long step = Math.max(1, (maxApplyBudget - minApplyBudget) / 16);
+            applyBudget = Math.min(maxApplyBudget, applyBudget + step);
+        }
     }
 
     @Override
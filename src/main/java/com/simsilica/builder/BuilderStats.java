@@ -0,0 +1,229 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A BuilderMetrics implementation that keeps a latency histogram
+ *  for each timing along with throughput and worker utilization and
+ *  can publish them through JMX.  Typical usage:
+ *  <pre>
+ *  BuilderStats stats = new BuilderStats(builder);
+ *  builder.setMetrics(stats);
+ *  stats.register();
+ *  </pre>
+ *
+ *  @author    Paul Speed
+ */
+public class BuilderStats implements BuilderMetrics, BuilderStatsMXBean {
+
+    static Logger log = LoggerFactory.getLogger(BuilderStats.class);
+
+    private final Builder builder;
+    private final Map<Timing, LatencyHistogram> histograms 
+                = new EnumMap<Timing, LatencyHistogram>(Timing.class);
+    private volatile long startTime;
+    private ObjectName objectName;
+
+    public BuilderStats( Builder builder ) {
+        this.builder = builder;
+        for( Timing t : Timing.values() ) {
+            histograms.put(t, new LatencyHistogram());
+        }
+        this.startTime = System.nanoTime();
+    }
+
+    @Override
+    public void record( Timing timing, long nanos ) {
+        histograms.get(timing).record(nanos);
+    }
+
+    public LatencyHistogram getHistogram( Timing timing ) {
+        return histograms.get(timing);
+    }
+
+    /**
+     *  Registers this object with the platform MBean server using
+     *  the builder's name.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.simsilica.builder:type=Builder,name=" 
+                                        + ObjectName.quote(builder.getName()));
+            server.registerMBean(this, objectName);
+        } catch( JMException e ) {
+            throw new RuntimeException("Error registering stats for:" + builder.getName(), e);
+        }
+    }
+
+    /**
+     *  Unregisters this object from the platform MBean server if
+     *  it was previously registered.
+     */
+    public void unregister() {
+        if( objectName == null ) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch( JMException e ) {
+            log.warn("Error unregistering:" + objectName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getName() {
+        return builder.getName();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return builder.getPendingCount();
+    }
+
+    @Override
+    public int getManagedCount() {
+        return builder.getManagedCount();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return builder.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return builder.getActiveCount();
+    }
+
+    @Override
+    public TimingSummary getQueueWait() {
+        return TimingSummary.create(histograms.get(Timing.QueueWait));
+    }
+
+    @Override
+    public TimingSummary getBuild() {
+        return TimingSummary.create(histograms.get(Timing.Build));
+    }
+
+    @Override
+    public TimingSummary getCanceledBuild() {
+        return TimingSummary.create(histograms.get(Timing.CanceledBuild));
+    }
+
+    @Override
+    public TimingSummary getDoneWait() {
+        return TimingSummary.create(histograms.get(Timing.DoneWait));
+    }
+
+    @Override
+    public TimingSummary getApply() {
+        return TimingSummary.create(histograms.get(Timing.Apply));
+    }
+
+    @Override
+    public TimingSummary getRelease() {
+        return TimingSummary.create(histograms.get(Timing.Release));
+    }
+
+    @Override
+    public TimingSummary getDispose() {
+        return TimingSummary.create(histograms.get(Timing.Dispose));
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - startTime) / 1000000000.0;
+    }
+
+    @Override
+    public double getBuildsPerSecond() {
+        return histograms.get(Timing.Build).getCount() / elapsedSeconds();
+    }
+
+    @Override
+    public double getAppliesPerSecond() {
+        return histograms.get(Timing.Apply).getCount() / elapsedSeconds();
+    }
+
+    @Override
+    public double getWorkerUtilization() {
+        long busy = histograms.get(Timing.Build).getTotal() 
+                    + histograms.get(Timing.CanceledBuild).getTotal()
+                    + histograms.get(Timing.Dispose).getTotal();
+        double available = (System.nanoTime() - startTime) * (double)builder.getPoolSize();
+        if( available <= 0 ) {
+            return 0;
+        }
+        return Math.min(1.0, busy / available);
+    }
+
+    @Override
+    public long getCanceledCount() {
+        return builder.getCanceledCount();
+    }
+
+    @Override
+    public double getSavedMillis() {
+        return builder.getSavedTime() / 1000000.0;
+    }
+
+    @Override
+    public void reset() {
+        for( LatencyHistogram h : histograms.values() ) {
+            h.reset();
+        }
+        startTime = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "BuilderStats[" + builder.getName() + ", buildsPerSecond=" + getBuildsPerSecond() 
+                + ", utilization=" + getWorkerUtilization() + ", histograms=" + histograms + "]";
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+
+/**
+ *  The JMX view of a Builder's BuilderStats.
+ *
+ *  @author    Paul Speed
+ */
+public interface BuilderStatsMXBean {
+
+    public String getName();
+
+    public int getPendingCount();
+
+    public int getManagedCount();
+
+    public int getPoolSize();
+
+    public int getActiveCount();
+
+    public TimingSummary getQueueWait();
+
+    public TimingSummary getBuild();
+
+    public TimingSummary getCanceledBuild();
+
+    public TimingSummary getDoneWait();
+
+    public TimingSummary getApply();
+
+    public TimingSummary getRelease();
+
+    public TimingSummary getDispose();
+
+    /**
+     *  Returns the number of completed builds per second since
+     *  the stats were created or last reset.
+     */
+    public double getBuildsPerSecond();
+
+    /**
+     *  Returns the number of applies per second since the stats
+     *  were created or last reset.
+     */
+    public double getAppliesPerSecond();
+
+    /**
+     *  Returns the fraction (0 to 1) of the available worker time
+     *  that was spent building since the stats were created or
+     *  last reset.
+     */
+    public double getWorkerUtilization();
+
+    public long getCanceledCount();
+
+    /**
+     *  Returns the estimated build time in milliseconds saved by
+     *  canceling builds early.
+     */
+    public double getSavedMillis();
+
+    public void reset();
+}
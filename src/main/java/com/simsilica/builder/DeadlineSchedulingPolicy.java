@@ -0,0 +1,101 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.builder;
+
+
+/**
+ *  An earliest-deadline-first SchedulingPolicy.  Each reference is given
+ *  a deadline of the time it was queued plus a target latency for its
+ *  priority and references are built in deadline order.  Low priority
+ *  references still wait longer than high priority ones but can no longer
+ *  be pushed back forever by a steady stream of new high priority 
+ *  references, as happens to the outer rings of a PagedGrid while the 
+ *  viewer keeps moving.  Once a reference has waited out the difference
+ *  in target latency it goes ahead of anything newer.  
+ *
+ *  <p>By default the target latency grows linearly with priority which
+ *  is the same as aging a reference's priority by one level every
+ *  latencyPerPriority nanoseconds.  Subclasses can override 
+ *  getTargetLatency() to give individual rings their own targets.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class DeadlineSchedulingPolicy implements SchedulingPolicy {
+
+    private final long baseLatency;
+    private final long latencyPerPriority;
+
+    /**
+     *  Creates a policy where a reference of priority p has a target
+     *  latency of baseLatency + p * latencyPerPriority nanoseconds.
+     */
+    public DeadlineSchedulingPolicy( long baseLatency, long latencyPerPriority ) {
+        this.baseLatency = baseLatency;
+        this.latencyPerPriority = latencyPerPriority;
+    }
+    
+    public long getBaseLatency() {
+        return baseLatency;
+    }
+    
+    public long getLatencyPerPriority() {
+        return latencyPerPriority;
+    }
+
+    /**
+     *  Returns how long, in nanoseconds, a reference of the specified
+     *  priority should wait at most before it is built.
+     */
+    public long getTargetLatency( int priority ) {
+        return baseLatency + Math.max(0, priority) * latencyPerPriority;
+    }
+
+    @Override
+    public long getScheduleKey( int priority, long queuedTime ) {
+        long latency = getTargetLatency(priority);
+        if( latency >= Long.MAX_VALUE - queuedTime ) {
+            return Long.MAX_VALUE - 1;
+        }
+        return queuedTime + latency;
+    }
+ 
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[baseLatency=" + baseLatency 
+                + ", latencyPerPriority=" + latencyPerPriority + "]";
+    }    
+}
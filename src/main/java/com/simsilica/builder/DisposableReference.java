@@ -0,0 +1,69 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.builder;
+
+
+/**
+ *  A BuilderReference whose release is split in two.  release() still
+ *  runs on the thread calling Builder.applyUpdates() but only needs to
+ *  detach the reference's results from whatever is using them, like the
+ *  scene graph.  The slower destruction of those results, like freeing
+ *  native buffers, is then done in disposeReleased() on one of the 
+ *  Builder's worker threads so that it doesn't eat into the frame.
+ *
+ *  @author    Paul Speed
+ */
+public interface DisposableReference extends BuilderReference {
+
+    /**
+     *  Called on the thread calling Builder.applyUpdates() right after
+     *  release().  Returns true if disposeReleased() should be scheduled.
+     */
+    public boolean needsDisposal();
+
+    /**
+     *  Called on a builder thread some time after release() to destroy
+     *  the results that release() detached.  Disposals are run ahead of
+     *  any pending builds but, like builds, are held while the Builder is
+     *  paused.  If the Builder won't take the disposal, for example because
+     *  it has already been shut down, then this is called right away on the
+     *  thread calling applyUpdates() instead.  Disposals that are still
+     *  queued when the Builder is shut down are dropped.  The reference 
+     *  must not be given to the Builder again until this has been called.
+     */
+    public void disposeReleased( Builder builder );
+}
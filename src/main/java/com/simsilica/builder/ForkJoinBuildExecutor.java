@@ -0,0 +1,363 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A BuildExecutor that runs tasks on the threads of a ForkJoinPool 
+ *  but keeps the tasks themselves in sharded priority queues instead of
+ *  the pool's own deques, which can't be reprioritized.  Instead of one 
+ *  queue that every worker contends for, queued tasks are spread across 
+ *  a priority queue per worker, each with its own lock, and nothing else
+ *  is shared between them.  Every executed task submits a small runner to
+ *  the pool and the runner, on whichever worker picks it up, reads the 
+ *  head key of each shard without locking and then locks only the shard
+ *  with the best task.  Priority order is therefore only approximate: two
+ *  workers may briefly pick tasks from different shards out of order.
+ *  Tasks queued from worker threads, like the next stage of a 
+ *  StagedReference, stay on that worker's shard.  remove() and reprioritize()
+ *  have to search the shards for the task, one lock at a time.
+ *
+ *  @author    Paul Speed
+ */
+public class ForkJoinBuildExecutor implements BuildExecutor {
+
+    static Logger log = LoggerFactory.getLogger(ForkJoinBuildExecutor.class);
+
+    private static final long EMPTY = Long.MAX_VALUE;
+    
+    private final String name;
+    private final ForkJoinPool pool;
+    private final Shard[] shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Runner runner = new Runner();
+    private volatile boolean paused;
+
+    public ForkJoinBuildExecutor( String name, int parallelism ) {
+        this.name = name;
+        this.shards = new Shard[Math.max(1, parallelism)];
+        for( int i = 0; i < shards.length; i++ ) {
+            shards[i] = new Shard();
+        }
+        this.pool = new ForkJoinPool(parallelism, new WorkerFactory(), null, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute( BuildTask task ) {
+        if( pool.isShutdown() ) {
+            throw new RejectedExecutionException("Executor is shutdown:" + this);
+        }
+        task.resetPriority();
+        homeShard().add(new Entry(task, sequence.getAndIncrement()));
+        if( !paused ) {
+            pool.execute(runner);
+        }
+    }
+
+    private Shard homeShard() {
+        Thread thread = Thread.currentThread();
+        if( thread instanceof Worker && ((Worker)thread).getOwner() == this ) {
+            return shards[((Worker)thread).index % shards.length];
+        }
+        return shards[(nextShard.getAndIncrement() & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     *  Removes and returns the queued task with the best priority
+     *  across all shards, preferring the worker's own shard on ties.
+     */
+    private BuildTask poll() {
+        Shard home = homeShard();
+        while( true ) {
+            Shard best = home;
+            long bestKey = home.head;
+            for( Shard shard : shards ) {
+                long key = shard.head;
+                if( key < bestKey ) {
+                    best = shard;
+                    bestKey = key;
+                }
+            }
+            if( bestKey == EMPTY ) {
+                return null;
+            }
+            Entry entry = best.poll();
+            if( entry != null ) {
+                return entry.task;
+            }
+            // Somebody beat us to it... look again
+        }
+    }
+
+    @Override
+    public boolean remove( BuildTask task ) {
+        for( Shard shard : shards ) {
+            if( shard.remove(task) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean reprioritize( BuildTask task ) {
+        for( Shard shard : shards ) {
+            if( shard.reprioritize(task) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void reprioritizeAll() {
+        for( Shard shard : shards ) {
+            shard.reprioritizeAll();
+        }
+    }
+
+    @Override
+    public void setPaused( boolean paused ) {
+        this.paused = paused;
+        if( !paused ) {
+            // Anything queued while we were paused never got a runner
+            // and runners that woke up during the pause went away empty
+            // handed.  Extra runners just find nothing to do.
+            for( int i = getQueuedCount(); i > 0; i-- ) {
+                pool.execute(runner);
+            }
+        }
+    }
+
+    @Override
+    public int getQueuedCount() {
+        int result = 0;
+        for( Shard shard : shards ) {
+            result += shard.size;
+        }
+        return result;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "ForkJoinBuildExecutor[" + name + ", parallelism=" + pool.getParallelism() + "]";
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final BuildTask task;
+        private final long sequence;
+        private long key;
+
+        public Entry( BuildTask task, long sequence ) {
+            this.task = task;
+            this.sequence = sequence;
+            this.key = task.getScheduleKey();
+        }
+
+        @Override
+        public int compareTo( Entry other ) {
+            // Sort by schedule key and then FIFO within a key
+            if( key != other.key ) {
+                return key < other.key ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+        }
+    }
+
+    private static class Shard {
+        private final PriorityQueue<Entry> entries = new PriorityQueue<Entry>();
+        
+        // The key of the first entry so that workers can pick a shard
+        // without locking all of them.  Ties between shards are broken
+        // in favor of the worker's own shard rather than strictly FIFO.
+        private volatile long head = EMPTY;
+        private volatile int size;
+
+        public synchronized void add( Entry entry ) {
+            entries.add(entry);
+            updateHead();
+        }
+
+        public synchronized Entry poll() {
+            Entry result = entries.poll();
+            updateHead();
+            return result;
+        }
+
+        public synchronized boolean remove( BuildTask task ) {
+            return take(task) != null;
+        }
+
+        public synchronized boolean reprioritize( BuildTask task ) {
+            Entry entry = take(task);
+            if( entry == null ) {
+                return false;
+            }
+            entry.task.resetPriority();
+            entry.key = entry.task.getScheduleKey();
+            entries.add(entry);
+            updateHead();
+            return true;
+        }
+
+        public synchronized void reprioritizeAll() {
+            List<Entry> temp = new ArrayList<Entry>(entries);
+            entries.clear();
+            for( Entry entry : temp ) {
+                entry.task.resetPriority();
+                entry.key = entry.task.getScheduleKey();
+                entries.add(entry);
+            }
+            updateHead();
+        }
+
+        /**
+         *  Removes and returns the entry for the specified task if it
+         *  is in this shard.  Must be called while holding the lock.
+         */
+        private Entry take( BuildTask task ) {
+            if( size == 0 ) {
+                return null;
+            }
+            for( Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if( entry.task == task ) {
+                    it.remove();
+                    updateHead();
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private void updateHead() {
+            Entry first = entries.peek();
+            head = first == null ? EMPTY : first.key;
+            size = entries.size();
+        }
+    }
+
+    /**
+     *  Submitted once per executed task.  Runs the best task available
+     *  when a worker gets to it.
+     */
+    private class Runner implements Runnable {
+        @Override
+        public void run() {
+            if( paused ) {
+                return;
+            }
+            // Count ourselves as active before taking the task so that
+            // it is never briefly neither queued nor active
+            active.incrementAndGet();
+            BuildTask task = poll();
+            if( task == null ) {
+                active.decrementAndGet();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private class Worker extends ForkJoinWorkerThread {
+        private final int index;
+
+        public Worker( ForkJoinPool pool, int index ) {
+            super(pool);
+            this.index = index;
+        }
+
+        public ForkJoinBuildExecutor getOwner() {
+            return ForkJoinBuildExecutor.this;
+        }
+    }
+
+    private class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        @Override
+        public ForkJoinWorkerThread newThread( ForkJoinPool pool ) {
+            Worker result = new Worker(pool, nextWorker.getAndIncrement());
+            result.setName(name + "[fj-worker-" + result.index + "]");
+            result.setDaemon(true);
+            log.info("Created thread:" + result);
+            return result;
+        }
+    }
+}
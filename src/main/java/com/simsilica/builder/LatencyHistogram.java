@@ -0,0 +1,150 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ *  A lock-free histogram of nanosecond durations.  Values are
+ *  grouped into four buckets per power of two so percentiles are
+ *  accurate to within 25%.
+ *
+ *  @author    Paul Speed
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 248;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+    }
+
+    private static int index( long value ) {
+        if( value < 4 ) {
+            return (int)Math.max(0, value);
+        }
+        int high = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)((value >>> (high - 2)) & 3);
+        return (high - 1) * 4 + sub;
+    }
+
+    private static long upperBound( int index ) {
+        if( index < 4 ) {
+            return index;
+        }
+        int high = index / 4 + 1;
+        int sub = index % 4;
+        long lower = (4L + sub) << (high - 2);
+        return lower + (1L << (high - 2)) - 1;
+    }
+
+    public void record( long nanos ) {
+        buckets.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m;
+        while( nanos > (m = max.get()) ) {
+            if( max.compareAndSet(m, nanos) ) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double)total.get() / c;
+    }
+
+    /**
+     *  Returns the approximate value below which the specified
+     *  fraction (0 to 1) of the recorded values fall. 
+     */
+    public long getPercentile( double fraction ) {
+        long c = count.get();
+        if( c == 0 ) {
+            return 0;
+        }
+        long threshold = (long)Math.ceil(c * fraction);
+        long sum = 0;
+        for( int i = 0; i < BUCKET_COUNT; i++ ) {
+            sum += buckets.get(i);
+            if( sum >= threshold && sum > 0 ) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     *  Clears the histogram.  Values recorded while clearing may
+     *  or may not be kept.
+     */
+    public void reset() {
+        for( int i = 0; i < BUCKET_COUNT; i++ ) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count=" + getCount() + ", mean=" + getMean() 
+                + ", p50=" + getPercentile(0.5) + ", p99=" + getPercentile(0.99) 
+                + ", max=" + getMax() + "]";
+    }
+}
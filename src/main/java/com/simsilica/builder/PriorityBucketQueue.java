@@ -0,0 +1,418 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ *  A blocking queue of pending Builder references that keeps them
+ *  in FIFO buckets keyed by their schedule key, normally the priority.
+ *  Unlike a PriorityBlockingQueue, a queued reference can be moved to 
+ *  its new priority in place without draining and resorting the whole 
+ *  queue.  Priorities that come from ring distances only have a handful
+ *  of distinct values so moving a reference is close to constant time.
+ *  Deadline based keys have many more distinct values and are more like
+ *  a regular sorted queue.
+ *  The queue can also be paused which keeps poll() and take() from
+ *  returning anything until it is resumed.
+ *
+ *  @author    Paul Speed
+ */
+class PriorityBucketQueue extends AbstractQueue<Runnable> 
+                          implements BlockingQueue<Runnable> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final TreeMap<Long, LinkedHashSet<Builder.PrioritizedRef>> buckets 
+                = new TreeMap<Long, LinkedHashSet<Builder.PrioritizedRef>>();
+    private int count;
+    private boolean paused;
+
+    public PriorityBucketQueue() {
+    }
+
+    /**
+     *  Pauses or resumes the queue.  While paused, poll() returns
+     *  null and take() blocks even if there are items in the queue.
+     */
+    public void setPaused( boolean paused ) {
+        lock.lock();
+        try {
+            this.paused = paused;
+            if( !paused && count > 0 ) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public boolean isPaused() {
+        lock.lock();
+        try {
+            return paused;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Refreshes the priority of the specified reference and moves
+     *  it to its new bucket if it is currently queued.  Returns false 
+     *  if the reference was not in the queue, in which case its priority
+     *  is left alone.
+     */
+    public boolean reprioritize( Builder.PrioritizedRef pr ) {
+        if( pr.owner != this ) {
+            // Not queued... and if it is being added right now then
+            // offer() will pick up the latest priority anyway.
+            return false;
+        }
+        lock.lock();
+        try {
+            // Could have moved on to another stage's queue
+            if( pr.owner != this ) {
+                return false;
+            }
+            pr.resetPriority();
+            if( pr.getScheduleKey() != pr.bucketKey ) {
+                unlink(pr);
+                link(pr);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Refreshes the priority of every queued reference.
+     */
+    public void reprioritizeAll() {
+        lock.lock();
+        try {
+            List<Builder.PrioritizedRef> temp = new ArrayList<Builder.PrioritizedRef>(count);
+            for( LinkedHashSet<Builder.PrioritizedRef> bucket : buckets.values() ) {
+                temp.addAll(bucket);
+            }
+            buckets.clear();
+            count = 0;
+            for( Builder.PrioritizedRef pr : temp ) {
+                pr.bucket = null;
+                pr.resetPriority();
+                link(pr);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void link( Builder.PrioritizedRef pr ) {
+        long key = pr.getScheduleKey();
+        LinkedHashSet<Builder.PrioritizedRef> bucket = buckets.get(key);
+        if( bucket == null ) {
+            bucket = new LinkedHashSet<Builder.PrioritizedRef>();
+            buckets.put(key, bucket);
+        }
+        bucket.add(pr);
+        pr.bucket = bucket;
+        pr.bucketKey = key;
+        pr.owner = this;
+        count++;
+    }
+    
+    private void unlink( Builder.PrioritizedRef pr ) {
+        LinkedHashSet<Builder.PrioritizedRef> bucket = pr.bucket; 
+        bucket.remove(pr);
+        if( bucket.isEmpty() ) {
+            buckets.remove(pr.bucketKey);
+        }
+        pr.bucket = null;
+        pr.owner = null;
+        count--;
+    }
+
+    private Builder.PrioritizedRef first() {
+        if( count == 0 ) {
+            return null;
+        }
+        return buckets.firstEntry().getValue().iterator().next();
+    }
+    
+    private Builder.PrioritizedRef dequeue() {
+        if( paused ) {
+            return null;
+        }
+        Builder.PrioritizedRef result = first();
+        if( result != null ) {
+            unlink(result);
+        }
+        return result;
+    }
+
+    private static Builder.PrioritizedRef cast( Object o ) {
+        if( !(o instanceof Builder.PrioritizedRef) ) {
+            throw new IllegalArgumentException("Unsupported task type:" + o);
+        }
+        return (Builder.PrioritizedRef)o;
+    }
+
+    @Override
+    public boolean offer( Runnable r ) {
+        Builder.PrioritizedRef pr = cast(r);
+        lock.lock();
+        try {
+            if( pr.owner != null ) {
+                throw new IllegalStateException("Already queued:" + pr);
+            }
+            pr.resetPriority();
+            link(pr);
+            available.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer( Runnable r, long timeout, TimeUnit unit ) {
+        return offer(r);
+    }
+
+    @Override
+    public void put( Runnable r ) {
+        offer(r);
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll( long timeout, TimeUnit unit ) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Builder.PrioritizedRef result;
+            while( (result = dequeue()) == null ) {
+                if( nanos <= 0 ) {
+                    return null;
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Builder.PrioritizedRef result;
+            while( (result = dequeue()) == null ) {
+                available.await();
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return paused ? null : first();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove( Object o ) {
+        if( !(o instanceof Builder.PrioritizedRef) ) {
+            return false;
+        }
+        Builder.PrioritizedRef pr = (Builder.PrioritizedRef)o;
+        lock.lock();
+        try {
+            if( pr.owner != this ) {
+                return false;
+            }
+            unlink(pr);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains( Object o ) {
+        if( !(o instanceof Builder.PrioritizedRef) ) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return ((Builder.PrioritizedRef)o).owner == this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     *  Drains elements regardless of pause state.
+     */
+    @Override
+    public int drainTo( Collection<? super Runnable> c ) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  Drains elements regardless of pause state.
+     */
+    @Override
+    public int drainTo( Collection<? super Runnable> c, int max ) {
+        if( c == this ) {
+            throw new IllegalArgumentException("Cannot drain to self");
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            Builder.PrioritizedRef pr;
+            while( n < max && (pr = first()) != null ) {
+                unlink(pr);
+                c.add(pr);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray( T[] a ) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     *  Returns an iterator over a snapshot of the queue in priority
+     *  order.  Removing through the iterator removes the item from
+     *  the queue if it is still queued.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final Iterator<Runnable> it = snapshot().iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if( last == null ) {
+                    throw new IllegalStateException();
+                }
+                PriorityBucketQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private List<Runnable> snapshot() {
+        lock.lock();
+        try {
+            List<Runnable> result = new ArrayList<Runnable>(count);
+            for( Map.Entry<Long, LinkedHashSet<Builder.PrioritizedRef>> e : buckets.entrySet() ) {
+                result.addAll(e.getValue());
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  The default BuildExecutor.  A pool of threads that all take tasks
+ *  from a single queue in strict priority order.  Tasks can be
+ *  reprioritized in place.  This only runs the Builder's own tasks.
+ *
+ *  <p>The pool is either a fixed size or adapts between a minimum and
+ *  maximum size.  An adaptive pool checks itself periodically and grows
+ *  when the queued work would take longer than the target latency to 
+ *  finish, but never past what the CPU budget allows given how much of
+ *  each build's time is actually spent on the CPU.  So I/O bound builds
+ *  can use more threads than CPU bound ones.  The pool shrinks back 
+ *  toward the minimum once it has had more threads than it needed for
+ *  the idle delay so that idle workers stop competing with the render
+ *  thread.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class PriorityExecutor implements BuildExecutor {
+
+    static Logger log = LoggerFactory.getLogger(PriorityExecutor.class);
+
+    public static final long DEFAULT_TARGET_LATENCY = 100000000L; // 100 ms
+    public static final long DEFAULT_IDLE_DELAY = 1000000000L; // 1 second
+    public static final long ADJUST_INTERVAL = 50; // ms
+    
+    private static final double SMOOTHING = 0.25;
+    private static final double MIN_CPU_FRACTION = 0.05;
+
+    private String name;
+    private PriorityBucketQueue queue = new PriorityBucketQueue();
+    private Pool executor;
+    private int minPoolSize;
+    private int maxPoolSize;
+    
+    // Only used by adaptive pools
+    private ScheduledExecutorService sizer;
+    private ThreadMXBean threadBean;
+    private volatile long targetLatency = DEFAULT_TARGET_LATENCY;
+    private volatile long idleDelay = DEFAULT_IDLE_DELAY;
+    private volatile float cpuBudget = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private AtomicLong completedCount = new AtomicLong();
+    private AtomicLong completedTime = new AtomicLong();
+    private AtomicLong completedCpuTime = new AtomicLong();
+    private double averageTime;
+    private double cpuFraction = 1;
+    private long lastNeeded;
+    
+    /**
+     *  Creates a fixed size pool.
+     */
+    public PriorityExecutor( String name, int poolSize ) {
+        this(name, poolSize, poolSize);
+    }
+    
+    /**
+     *  Creates a pool that adapts its size between minPoolSize and
+     *  maxPoolSize based on the amount of queued work.  If the sizes are 
+     *  the same then the pool is a fixed size.
+     */
+    public PriorityExecutor( String name, int minPoolSize, int maxPoolSize ) {
+        if( minPoolSize < 1 || maxPoolSize < minPoolSize ) {
+            throw new IllegalArgumentException("Invalid pool sizes, min:" + minPoolSize + " max:" + maxPoolSize);
+        }
+        this.name = name;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.executor = new Pool(minPoolSize, maxPoolSize);
+                                                
+        // Make sure that everything goes through the queue.  Otherwise
+        // the executor will hand the first few tasks directly to new threads
+        // regardless of priority or pause state.
+        executor.prestartAllCoreThreads();
+        
+        if( maxPoolSize > minPoolSize ) {
+            threadBean = ManagementFactory.getThreadMXBean();
+            if( !threadBean.isCurrentThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled() ) {
+                threadBean = null;
+            }
+            sizer = Executors.newSingleThreadScheduledExecutor(new BuilderThreadFactory("sizer"));
+            sizer.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        adjustPoolSize();
+                    }
+                }, ADJUST_INTERVAL, ADJUST_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+    
+    public boolean isAdaptive() {
+        return sizer != null;
+    }
+    
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+    
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+ 
+    /**
+     *  Sets how long, in nanoseconds, an adaptive pool should let its 
+     *  queued work take before adding threads.  Defaults to 100 ms.
+     */
+    public void setTargetLatency( long nanos ) {
+        this.targetLatency = nanos;
+    }
+    
+    public long getTargetLatency() {
+        return targetLatency;
+    }
+ 
+    /**
+     *  Sets how long, in nanoseconds, an adaptive pool must have had more 
+     *  threads than it needed before it shrinks.  Defaults to 1 second.
+     */
+    public void setIdleDelay( long nanos ) {
+        this.idleDelay = nanos;
+    }
+    
+    public long getIdleDelay() {
+        return idleDelay;
+    }
+ 
+    /**
+     *  Sets the number of cores' worth of CPU time that the builds of an
+     *  adaptive pool are allowed to use at once.  Defaults to one less than
+     *  the number of available processors so that the render thread always
+     *  has a core to itself.
+     */
+    public void setCpuBudget( float cores ) {
+        this.cpuBudget = cores;
+    }
+    
+    public float getCpuBudget() {
+        return cpuBudget;
+    }
+ 
+    /**
+     *  Called periodically for adaptive pools to pick a new pool size 
+     *  from the latest build timings and queue depth.
+     */   
+    protected void adjustPoolSize() {
+        long count = completedCount.getAndSet(0);
+        long time = completedTime.getAndSet(0);
+        long cpu = completedCpuTime.getAndSet(0);
+        if( count > 0 ) {
+            averageTime += ((time / (double)count) - averageTime) * (averageTime == 0 ? 1 : SMOOTHING);
+            if( threadBean != null && time > 0 ) {
+                cpuFraction += ((cpu / (double)time) - cpuFraction) * SMOOTHING;
+            }
+        }
+        
+        int current = executor.getCorePoolSize();
+        int queued = queue.size();
+        int active = executor.getActiveCount();
+        int size;
+        if( averageTime == 0 ) {
+            // We don't know how long builds take yet so just try to
+            // run everything
+            size = queued + active;
+        } else {
+            double work = (queued + active) * averageTime;
+            size = (int)Math.ceil(work / targetLatency);
+        }
+        
+        // Stay within the CPU budget based on how much of a thread each
+        // build really uses
+        int cpuLimit = (int)(cpuBudget / Math.max(cpuFraction, MIN_CPU_FRACTION));
+        size = Math.min(size, Math.max(1, cpuLimit));
+        size = Math.max(minPoolSize, Math.min(maxPoolSize, size));
+        
+        long now = System.nanoTime();
+        if( size >= current ) {
+            lastNeeded = now;
+        } else if( now - lastNeeded < idleDelay ) {
+            // Not idle long enough yet
+            return;
+        }
+        if( size != current ) {
+            resize(size);
+        }
+    }
+    
+    private void resize( int size ) {
+        if( log.isDebugEnabled() ) {
+            log.debug(name + " resizing pool from:" + executor.getCorePoolSize() + " to:" + size
+                      + " queued:" + queue.size() + " averageTime:" + averageTime 
+                      + " cpuFraction:" + cpuFraction);
+        }
+        if( size > executor.getCorePoolSize() ) {
+            executor.setCorePoolSize(size);
+            
+            // The executor only starts as many new threads as there are
+            // queued tasks and would otherwise hand later tasks directly to
+            // new threads, bypassing the queue.
+            executor.prestartAllCoreThreads();
+        } else {
+            // Extra threads exit as soon as they are idle
+            executor.setCorePoolSize(size);
+        }
+    }
+
+    @Override
+    public void execute( BuildTask task ) {
+        // If we are paused then the queue will just hold onto it
+        executor.execute(task);
+    }
+
+    @Override
+    public boolean remove( BuildTask task ) {
+        return executor.remove(task);
+    }
+
+    @Override
+    public boolean reprioritize( BuildTask task ) {
+        if( !(task instanceof Builder.PrioritizedRef) ) {
+            return false;
+        }
+        return queue.reprioritize((Builder.PrioritizedRef)task);
+    }
+
+    @Override
+    public void reprioritizeAll() {
+        queue.reprioritizeAll();
+    }
+
+    @Override
+    public void setPaused( boolean paused ) {
+        queue.setPaused(paused);
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        if( sizer != null ) {
+            sizer.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityExecutor[" + name + ", poolSize=" + getPoolSize() 
+                + ", min=" + minPoolSize + ", max=" + maxPoolSize + "]";
+    }
+
+    /**
+     *  Times each task for adaptive pools.
+     */
+    private class Pool extends ThreadPoolExecutor {
+        private ThreadLocal<long[]> start = new ThreadLocal<long[]>() {
+                @Override
+                protected long[] initialValue() {
+                    return new long[2];
+                }
+            };
+    
+        public Pool( int minPoolSize, int maxPoolSize ) {
+            super(minPoolSize, maxPoolSize, 0L, TimeUnit.MILLISECONDS,
+                  queue, new BuilderThreadFactory(null));
+        }
+        
+        @Override
+        protected void beforeExecute( Thread t, Runnable r ) {
+            if( sizer == null ) {
+                return;
+            }
+            long[] times = start.get();
+            times[0] = System.nanoTime();
+            times[1] = threadBean != null ? threadBean.getCurrentThreadCpuTime() : 0;
+        }
+        
+        @Override
+        protected void afterExecute( Runnable r, Throwable t ) {
+            if( sizer == null ) {
+                return;
+            }
+            long[] times = start.get();
+            completedTime.addAndGet(System.nanoTime() - times[0]);
+            if( threadBean != null ) {
+                completedCpuTime.addAndGet(threadBean.getCurrentThreadCpuTime() - times[1]);
+            }
+            completedCount.incrementAndGet();
+        }
+    }
+
+    private class BuilderThreadFactory implements ThreadFactory {
+        private String suffix;
+        
+        public BuilderThreadFactory( String suffix ) {
+            this.suffix = suffix;
+        }
+        
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread result = Executors.defaultThreadFactory().newThread(r);
+            
+            String s = result.getName();
+            if( suffix != null ) {
+                result.setName(name + "[" + suffix + "]");
+            } else {
+                result.setName(name + "[" + s + "]");
+            }
+            result.setDaemon(true);
+            
+            log.info("Created thread:" + result);
+                        
+            return result;            
+        }
+    } 
+}
@@ -0,0 +1,75 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.builder;
+
+
+/**
+ *  Decides the order in which a Builder's pending references are built.
+ *  The policy turns a reference's priority and the time it was queued
+ *  into a schedule key.  Executors run the task with the lowest key first
+ *  and tasks with equal keys in the order they were queued.
+ *
+ *  @author    Paul Speed
+ */
+public interface SchedulingPolicy {
+
+    /**
+     *  The default policy: strict priority order.  The queue time is
+     *  ignored.
+     */
+    public static final SchedulingPolicy PRIORITY = new SchedulingPolicy() {
+            @Override
+            public long getScheduleKey( int priority, long queuedTime ) {
+                return priority;
+            }
+            
+            @Override
+            public String toString() {
+                return "SchedulingPolicy.PRIORITY";
+            }
+        };
+
+    /**
+     *  Returns the schedule key for a reference with the specified
+     *  priority that was first queued at queuedTime.  The queue time is 
+     *  in nanoseconds since the Builder was created and stays the same
+     *  while the reference is reprioritized or moves between build stages.  
+     *  Keys must be greater than Long.MIN_VALUE, which is used to run
+     *  disposals first, and less than Long.MAX_VALUE.
+     */
+    public long getScheduleKey( int priority, long queuedTime );
+}
@@ -0,0 +1,69 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+
+/**
+ *  A BuilderReference whose build is split into ordered stages that
+ *  each run on their own Builder stage pool.  This lets I/O bound work,
+ *  like loading source data, run on a separate set of threads from CPU 
+ *  bound work, like generating meshes, so that neither holds up the other.
+ *  The reference moves on to the next stage's queue as soon as a stage is
+ *  done and never holds a thread while it is waiting.
+ *
+ *  @author    Paul Speed
+ */
+public interface StagedReference extends CancellableReference {
+
+    /**
+     *  Returns the names of the stage pools that this reference's build
+     *  stages run on, in order.  A null name means the builder's main
+     *  pool.  If this method returns null then the reference is built
+     *  with build(CancellationToken) like any other CancellableReference.
+     *  This is called on the thread that queues the build. 
+     */
+    public String[] getStages();
+
+    /**
+     *  Called on a thread from the specified stage's pool to perform
+     *  that stage of the build.  Return false to skip the remaining
+     *  stages, for example when the results were found in a cache.  
+     *  Remaining stages are also skipped if the reference is released.
+     */
+    public boolean build( int stage, CancellationToken token );
+}
@@ -0,0 +1,238 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+
+package com.simsilica.builder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A BuildExecutor that runs each build on its own virtual thread
+ *  when running on a JVM that supports them.  This is useful for builds 
+ *  that spend most of their time blocked on I/O because a blocked virtual 
+ *  thread doesn't tie up a platform thread.  The number of builds running 
+ *  at once is limited by a semaphore rather than a pool size and queued
+ *  tasks are admitted in priority order as permits free up.  On older
+ *  JVMs this falls back to a cached pool of platform threads with the
+ *  same limit.  This only runs the Builder's own tasks.
+ *
+ *  @author    Paul Speed
+ */
+public class VirtualThreadExecutor implements BuildExecutor {
+
+    static Logger log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private String name;
+    private int maxConcurrency;
+    private Semaphore permits;
+    private PriorityBucketQueue queue = new PriorityBucketQueue();
+    private ExecutorService threads;
+    private boolean virtual;
+
+    /**
+     *  Creates an executor that will run up to maxConcurrency builds
+     *  at the same time.
+     */
+    public VirtualThreadExecutor( String name, int maxConcurrency ) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.threads = createVirtualExecutor(name);
+        this.virtual = threads != null;
+        if( threads == null ) {
+            log.info("Virtual threads not available, using platform threads for:" + name);
+            this.threads = Executors.newCachedThreadPool(new PlatformThreadFactory());
+        }
+    }
+
+    /**
+     *  Looks up the virtual thread API by reflection so that this
+     *  class still loads on JVMs that don't have it.
+     */
+    private static ExecutorService createVirtualExecutor( String name ) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-vt-", 0L);
+            ThreadFactory factory = (ThreadFactory)builderType.getMethod("factory").invoke(builder);
+            Method create = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService)create.invoke(null, factory);
+        } catch( Exception e ) {
+            if( log.isDebugEnabled() ) {
+                log.debug("Error creating virtual thread executor", e);
+            }
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *  Returns true if builds are running on virtual threads and false
+     *  if this executor had to fall back to platform threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void execute( BuildTask task ) {
+        if( threads.isShutdown() ) {
+            throw new RejectedExecutionException("Executor is shutdown:" + this);
+        }
+        queue.offer(task);
+        dispatch();
+    }
+
+    /**
+     *  Starts queued tasks in priority order for as long as there are
+     *  permits.  Called whenever a task is queued, a task finishes, or
+     *  the executor is resumed.
+     */
+    private void dispatch() {
+        while( permits.tryAcquire() ) {
+            final BuildTask task = (BuildTask)queue.poll();
+            if( task == null ) {
+                permits.release();
+                // Something may have been queued after our poll() by
+                // a thread that couldn't get the permit we were holding.
+                if( queue.peek() == null ) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                threads.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                task.run();
+                            } finally {
+                                permits.release();
+                                dispatch();
+                            }
+                        }
+                    });
+            } catch( RejectedExecutionException e ) {
+                // Shut down out from under us
+                permits.release();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove( BuildTask task ) {
+        return queue.remove(task);
+    }
+
+    @Override
+    public boolean reprioritize( BuildTask task ) {
+        if( !(task instanceof Builder.PrioritizedRef) ) {
+            return false;
+        }
+        return queue.reprioritize((Builder.PrioritizedRef)task);
+    }
+
+    @Override
+    public void reprioritizeAll() {
+        queue.reprioritizeAll();
+    }
+
+    @Override
+    public void setPaused( boolean paused ) {
+        queue.setPaused(paused);
+        if( !paused ) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     *  Returns the maximum number of builds that can run at once.
+     */
+    @Override
+    public int getPoolSize() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor[" + name + ", maxConcurrency=" + maxConcurrency 
+                + ", virtual=" + virtual + "]";
+    }
+
+    private class PlatformThreadFactory implements ThreadFactory {
+        private AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread result = new Thread(r, name + "-thread-" + count.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
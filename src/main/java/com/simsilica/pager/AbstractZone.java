@@ -53,6 +53,7 @@ public abstract class AbstractZone implements Zone {
     private int priority;
     private Grid grid;
     private Zone parentZone;
+    private boolean recycled;
     
     protected AbstractZone( Grid grid, int xCell, int yCell, int zCell ) {
         this.grid = grid;
@@ -61,6 +62,28 @@ public abstract class AbstractZone implements Zone {
         this.zCell = zCell;
         this.zoneRoot = new Node(getClass().getSimpleName() + "[" + xCell + ", " + yCell + ", " + zCell + "]");
     }
+ 
+    /**
+     *  Moves this zone to a new cell so that a RecyclingZoneFactory can
+     *  reuse it.  This resets the cell, priority, parent zone, and zone root
+     *  location.  The zone root loses the cell from its name the first time
+     *  the zone is recycled and keeps that fixed name from then on so that
+     *  recycling doesn't have to build a new string every time.  toString()
+     *  always has the current cell.  Subclasses with their own per-cell state
+     *  should override this to clear it and call super.reset().
+     */   
+    public void reset( int xCell, int yCell, int zCell ) {
+        this.xCell = xCell;
+        this.yCell = yCell;
+        this.zCell = zCell;
+        this.priority = 0;
+        this.parentZone = null;
+        if( !recycled ) {
+            zoneRoot.setName(getClass().getSimpleName());
+            recycled = true;
+        }
+        zoneRoot.setLocalTranslation(0, 0, 0);
+    }
 
     @Override
     public Grid getGrid() {
@@ -0,0 +1,74 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.simsilica.pager;
+
+import com.simsilica.builder.Builder;
+
+
+/**
+ *  A Zone whose built results can be kept in a ZoneCache after the
+ *  zone is released and then given to a new zone for the same cell
+ *  instead of building it again.
+ *
+ *  @author    Paul Speed
+ */
+public interface CacheableZone extends Zone {
+
+    /**
+     *  Called instead of release() when the paged grid has a cache.
+     *  The zone should detach its built results from its zone root and
+     *  return them without destroying them.  Return null if there is
+     *  nothing worth caching, for example when the last build was canceled
+     *  before it completed, and release() will be called as usual.
+     */
+    public ZonePayload detachPayload( Builder builder );
+
+    /**
+     *  Called instead of build() when the cache has a payload for this
+     *  zone's cell.  If this returns true then the zone is treated as 
+     *  built and apply() will be called next without ever calling build().  
+     *  If it returns false then the payload is released and the zone is 
+     *  built normally.  Like build(), this must only take the payload back
+     *  into the zone and must not touch the scene graph.  Attaching the
+     *  results is left to apply(), which is always called on the thread
+     *  calling Builder.applyUpdates().  This is usually called on that
+     *  thread too and so should be quick, but a DeferredZone is given its
+     *  payload on a builder thread right after initialize().
+     */
+    public boolean restorePayload( ZonePayload payload );
+}
@@ -0,0 +1,66 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.pager;
+
+
+/**
+ *  A Zone that puts off its expensive setup until it is first built so
+ *  that the ZoneFactory only has to do the minimum on the thread that
+ *  moves the PagedGrid.  The factory still creates the zone and its zone
+ *  root on that thread because the grid positions, hides, and prioritizes
+ *  the zone right away.  Everything else, like materials, lookup state,
+ *  or child nodes, can be created in initialize() on a builder thread.
+ *  The only work left for the thread calling Builder.applyUpdates() is
+ *  then apply() which attaches the results to the scene graph.
+ *
+ *  @author    Paul Speed
+ */
+public interface DeferredZone extends Zone {
+
+    /**
+     *  Called once on a builder thread before anything else touches the
+     *  zone's build state.  This is before the zone's first build() and 
+     *  before it is given any results from a ZoneCache or ZoneStore.  Unlike
+     *  other CacheableZones, a DeferredZone is given its cached payload with
+     *  restorePayload() right after this on the same builder thread.  Zones
+     *  that are released without ever being built are never initialized
+     *  and so will not have release() called either.  A zone reused by a
+     *  RecyclingZoneFactory is initialized again in each new cell and can 
+     *  skip any setup that it has already done.
+     */
+    public void initialize();
+}
@@ -0,0 +1,290 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.pager;
+
+import com.jme3.util.BufferUtils;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A pool of direct buffers that zones can borrow for their mesh data
+ *  in build() and give back in release() instead of allocating and
+ *  destroying native memory for every zone.  Buffers are pooled in 
+ *  power of two size classes so a request gets a buffer of the next 
+ *  class size up with its limit set to the requested size.  Requests 
+ *  larger than the biggest class are allocated and destroyed as usual.
+ *
+ *  <p>Idle buffers are kept up to a byte limit and any returned beyond
+ *  that are destroyed.  Borrowed buffers are not cleared.  Float, short,
+ *  and int views can be borrowed and returned directly.  This is safe to
+ *  use from any thread.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class DirectBufferPool {
+
+    static Logger log = LoggerFactory.getLogger(DirectBufferPool.class);
+
+    private static final int MIN_CLASS_SHIFT = 6;   // 64 bytes
+    private static final int MAX_CLASS_SHIFT = 24;  // 16 MB
+
+    private final ArrayDeque<ByteBuffer>[] classes;
+    private final long maxPooledBytes;
+    
+    // The pooled buffer behind every borrowed buffer or view
+    private final IdentityHashMap<Buffer, ByteBuffer> borrowed = new IdentityHashMap<Buffer, ByteBuffer>();
+    
+    private AtomicLong pooledBytes = new AtomicLong();
+    private AtomicLong borrowedBytes = new AtomicLong();
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong discards = new AtomicLong();
+
+    /**
+     *  Creates a pool that will keep up to maxPooledBytes of idle
+     *  buffers.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DirectBufferPool( long maxPooledBytes ) {
+        this.maxPooledBytes = maxPooledBytes;
+        this.classes = new ArrayDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for( int i = 0; i < classes.length; i++ ) {
+            classes[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     *  Returns the bytes of idle buffers being held by the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     *  Returns the capacity in bytes of the buffers that are currently
+     *  borrowed.
+     */
+    public long getBorrowedBytes() {
+        return borrowedBytes.get();
+    }
+ 
+    /**
+     *  Returns the total native memory footprint of the pool's buffers,
+     *  idle or borrowed.
+     */   
+    public long getFootprint() {
+        return pooledBytes.get() + borrowedBytes.get();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     *  Returns the fraction of requests that were given a pooled buffer
+     *  instead of a newly allocated one.
+     */
+    public double getHitRate() {
+        long count = requests.get();
+        return count == 0 ? 0 : hits.get() / (double)count;
+    }
+
+    /**
+     *  Returns the number of returned buffers that were destroyed because
+     *  the pool was full or they were too large to pool.
+     */
+    public long getDiscardCount() {
+        return discards.get();
+    }
+
+    private static int classIndex( int size ) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     *  Returns a native order direct buffer with at least 'size' bytes
+     *  remaining.  The buffer must be given back with release().
+     */
+    public ByteBuffer acquire( int size ) {
+        ByteBuffer result = borrow(size);
+        register(result, result);
+        return result;
+    }
+
+    /**
+     *  Returns a direct float buffer with room for 'count' floats.  The
+     *  buffer must be given back with release().
+     */
+    public FloatBuffer acquireFloats( int count ) {
+        ByteBuffer base = borrow(count * 4);
+        FloatBuffer result = base.asFloatBuffer();
+        register(result, base);
+        return result;
+    }
+
+    /**
+     *  Returns a direct short buffer with room for 'count' shorts.  The
+     *  buffer must be given back with release().
+     */
+    public ShortBuffer acquireShorts( int count ) {
+        ByteBuffer base = borrow(count * 2);
+        ShortBuffer result = base.asShortBuffer();
+        register(result, base);
+        return result;
+    }
+
+    /**
+     *  Returns a direct int buffer with room for 'count' ints.  The
+     *  buffer must be given back with release().
+     */
+    public IntBuffer acquireInts( int count ) {
+        ByteBuffer base = borrow(count * 4);
+        IntBuffer result = base.asIntBuffer();
+        register(result, base);
+        return result;
+    }
+
+    private ByteBuffer borrow( int size ) {
+        requests.incrementAndGet();
+        int index = classIndex(size);
+        ByteBuffer result = null;
+        if( index < classes.length ) {
+            ArrayDeque<ByteBuffer> pool = classes[index];
+            synchronized( pool ) {
+                result = pool.poll();
+            }
+            if( result != null ) {
+                hits.incrementAndGet();
+                pooledBytes.addAndGet(-result.capacity());
+            } else {
+                result = ByteBuffer.allocateDirect(1 << (index + MIN_CLASS_SHIFT));
+            }
+        } else {
+            result = ByteBuffer.allocateDirect(size);
+        }
+        borrowedBytes.addAndGet(result.capacity());
+        result.clear();
+        result.limit(size);
+        return result.order(ByteOrder.nativeOrder());
+    }
+
+    private void register( Buffer buffer, ByteBuffer base ) {
+        synchronized( borrowed ) {
+            borrowed.put(buffer, base);
+        }
+    }
+
+    /**
+     *  Gives back a buffer or view that was borrowed from this pool.  
+     *  Returns false if the buffer didn't come from this pool, in which 
+     *  case it is left alone.
+     */
+    public boolean release( Buffer buffer ) {
+        ByteBuffer base;
+        synchronized( borrowed ) {
+            base = borrowed.remove(buffer);
+        }
+        if( base == null ) {
+            return false;
+        }
+        int capacity = base.capacity();
+        borrowedBytes.addAndGet(-capacity);
+        int index = classIndex(capacity);
+        if( index < classes.length && capacity == 1 << (index + MIN_CLASS_SHIFT) ) {
+            if( pooledBytes.addAndGet(capacity) <= maxPooledBytes ) {
+                ArrayDeque<ByteBuffer> pool = classes[index];
+                synchronized( pool ) {
+                    pool.push(base);
+                }
+                return true;
+            }
+            pooledBytes.addAndGet(-capacity);
+        }
+        if( log.isTraceEnabled() ) {
+            log.trace("Discarding buffer:" + base);
+        }
+        discards.incrementAndGet();
+        BufferUtils.destroyDirectBuffer(base);
+        return true;
+    }
+
+    /**
+     *  Destroys all of the idle buffers in the pool.  Borrowed buffers
+     *  can still be released afterwards.
+     */
+    public void clear() {
+        for( ArrayDeque<ByteBuffer> pool : classes ) {
+            while( true ) {
+                ByteBuffer buffer;
+                synchronized( pool ) {
+                    buffer = pool.poll();
+                }
+                if( buffer == null ) {
+                    break;
+                }
+                pooledBytes.addAndGet(-buffer.capacity());
+                BufferUtils.destroyDirectBuffer(buffer);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectBufferPool[pooledBytes=" + pooledBytes + ", borrowedBytes=" + borrowedBytes
+                + ", maxPooledBytes=" + maxPooledBytes + ", requests=" + requests 
+                + ", hitRate=" + getHitRate() + ", discards=" + discards + "]";
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.simsilica.pager;
+
+
+/**
+ *  Defines which cells around the center cell a PagedGrid keeps
+ *  zones for.  Every shape fits in the (2 * radius + 1) square
+ *  around the center cell.
+ *
+ *  @author    Paul Speed
+ */
+public enum InterestShape {
+
+    /**
+     *  The full (2 * radius + 1) square.  This is the default.
+     */
+    Square {
+        @Override
+        public int getHalfExtent( int dx, int radius ) {
+            return Math.abs(dx) > radius ? -1 : radius;
+        }
+    },
+
+    /**
+     *  Cells whose centers are within radius + 0.5 cells of the center
+     *  cell's center.  This leaves out the corners of the square which
+     *  are farther away than the view distance and cuts the number of
+     *  zones by about 20% for large radii.
+     */
+    Circle {
+        @Override
+        public int getHalfExtent( int dx, int radius ) {
+            int remaining = radius * radius + radius - dx * dx;
+            if( remaining < 0 ) {
+                return -1;
+            }
+            return (int)Math.sqrt(remaining);
+        }
+    },
+
+    /**
+     *  Cells within 'radius' steps of the center cell when only moving
+     *  along x and z.
+     */
+    Diamond {
+        @Override
+        public int getHalfExtent( int dx, int radius ) {
+            return Math.abs(dx) > radius ? -1 : radius - Math.abs(dx);
+        }
+    };
+
+    /**
+     *  Returns how far the shape extends in z for the column 'dx' cells
+     *  away from the center or -1 if the column is completely outside of 
+     *  the shape.  Shapes are always symmetric and contiguous in z.
+     */
+    public abstract int getHalfExtent( int dx, int radius );
+
+    public boolean contains( int dx, int dz, int radius ) {
+        int h = getHalfExtent(dx, radius);
+        return h >= 0 && Math.abs(dz) <= h;
+    }
+
+    /**
+     *  Returns the number of cells in a single layer of the shape.
+     */
+    public int getCellCount( int radius ) {
+        int count = 0;
+        for( int dx = -radius; dx <= radius; dx++ ) {
+            int h = getHalfExtent(dx, radius);
+            if( h >= 0 ) {
+                count += 2 * h + 1;
+            }
+        }
+        return count;
+    }
+}
@@ -43,8 +43,21 @@ import com.jme3.scene.Spatial.CullHint;
 import com.jme3.util.SafeArrayList;
 import com.simsilica.builder.Builder;
 import com.simsilica.builder.BuilderReference;
+import com.simsilica.builder.CancellableReference;
+import com.simsilica.builder.CancellationToken;
+import com.simsilica.builder.DisposableReference;
+import com.simsilica.builder.StagedReference;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +78,8 @@ public class PagedGrid {
     private Builder builder;
     private Node gridRoot;
     private ZoneFactory zoneFactory;    
+    private int xCornerCell;
+    private int zCornerCell;
     private float xCornerWorld;
     private float zCornerWorld;
     private int xCenterCell = Integer.MIN_VALUE;
@@ -74,9 +89,48 @@ public class PagedGrid {
     private Grid grid;
     private int radius;
     private int priorityBias = 1;
+    private InterestShape shape = InterestShape.Square;
+    private int releaseMargin;
  
     private boolean trackViewLocation;
+    private boolean trackRelativeLocation = true;
+    private ZoneCache zoneCache;
+    private volatile ZoneStore zoneStore;
+    private volatile TileCache<?> tileCache;
  
+    // Smoothed movement per setCenterWorldLocation() call used to
+    // guess which cells we will need next.
+    private static final float VELOCITY_SMOOTHING = 0.25f;
+    private static final float MIN_PREFETCH_SPEED = 0.01f; // in cells
+    private float xVelocity;
+    private float zVelocity;
+    private int prefetchDistance;
+    private int prefetchPriorityBias = 4;
+ 
+    // The center and offset to the farthest step that the prefetched 
+    // zones were last chosen for.  The center is MIN_VALUE when that 
+    // isn't known and everything must be checked again.
+    private int xPrefetchCenter = Integer.MIN_VALUE;
+    private int zPrefetchCenter = Integer.MIN_VALUE;
+    private int xPrefetchDir;
+    private int zPrefetchDir;
+ 
+    // Speculative zones outside of the cells ring buffer  
+    private Map<CellKey, ZoneProxy> prefetched = new HashMap<CellKey, ZoneProxy>();
+    private CellKey prefetchKey = new CellKey(null, 0, 0, 0);
+ 
+    // The cells entering during a move whose zones will all be created
+    // together.  Null when cells are created one at a time.
+    private CellBatch batch;
+    
+    // Reused on the render thread for every batch and zone location 
+    // so that crossing a cell boundary doesn't create garbage of its own.
+    private CellBatch cellBatch = new CellBatch();
+    private Vector3f tempLocation = new Vector3f();
+    private static final Zone[] NO_ZONES = new Zone[0];
+ 
+    // A ring buffer of cells indexed by world cell modulo size.  It
+    // covers the radius plus the release margin.
     private ZoneProxy[][][] cells;
     private int size;
     private int layers;
@@ -88,6 +142,9 @@ public class PagedGrid {
     private ConcurrentHashMap<Zone, ZoneProxy> releaseWatchDog = new ConcurrentHashMap<Zone, ZoneProxy>(); 
 
     private int appliedZoneCount = 0;
+    
+    // Zones that have been passed to the builder but not applied yet
+    private Set<ZoneProxy> pending = new LinkedHashSet<ZoneProxy>();
  
     /**
      *  Creates a root level paging system that will use the specified
@@ -142,7 +199,77 @@ public class PagedGrid {
     }
     
     public int getMaxZoneCount() {
-        return size * size * layers;
+        return shape.getCellCount(radius) * layers;
+    }
+ 
+    /**
+     *  Sets the shape of the area around the center cell that is
+     *  kept populated with zones.  Defaults to InterestShape.Square.
+     *  If the grid already has zones then zones are released and created 
+     *  as needed to match the new shape.
+     *  Note: child grids will only get zones where their parent grid
+     *  has zones so a child should not extend past its parent's shape. 
+     */   
+    public void setInterestShape( InterestShape shape ) {
+        if( shape == null ) {
+            throw new IllegalArgumentException("Shape cannot be null");
+        }
+        if( this.shape == shape ) {
+            return;
+        }
+        this.shape = shape;
+        xPrefetchCenter = Integer.MIN_VALUE;
+        if( xCenterCell == Integer.MIN_VALUE ) {
+            return;
+        }
+        int outer = radius + releaseMargin;
+        for( int x = xCenterCell - outer; x <= xCenterCell + outer; x++ ) {
+            for( int z = zCenterCell - outer; z <= zCenterCell + outer; z++ ) {
+                int dx = x - xCenterCell;
+                int dz = z - zCenterCell;
+                CellOp op;
+                if( shape.contains(dx, dz, radius) ) {
+                    op = CellOp.Show;
+                } else if( shape.contains(dx, dz, outer) ) {
+                    op = CellOp.Hide;
+                } else {
+                    op = CellOp.Release;
+                }
+                for( int y = 0; y < layers; y++ ) {
+                    apply(op, x, y, z);
+                }
+            }
+        }
+    }
+    
+    public InterestShape getInterestShape() {
+        return shape;
+    }
+ 
+    /**
+     *  Sets the number of cells beyond the radius that zones are kept
+     *  for before they are released.  Zones that leave the radius but are 
+     *  still within the margin are hidden instead of released and will
+     *  be shown again without rebuilding if the center comes back.  This
+     *  avoids rebuilding whole strips of zones when moving back and forth
+     *  across a cell boundary at the cost of keeping more zones in memory.  
+     *  Defaults to 0.  This must be set before the center location is set
+     *  for the first time.
+     */   
+    public void setReleaseMargin( int margin ) {
+        if( margin < 0 ) {
+            throw new IllegalArgumentException("Margin cannot be negative:" + margin);
+        }
+        if( xCenterCell != Integer.MIN_VALUE ) {
+            throw new IllegalStateException("Release margin must be set before the center location.");
+        }
+        this.releaseMargin = margin;
+        this.size = 2 * (radius + margin) + 1;
+        this.cells = new ZoneProxy[size][layers][size];
+    }
+    
+    public int getReleaseMargin() {
+        return releaseMargin;
     }
  
     public void release() {
@@ -169,7 +296,9 @@ public class PagedGrid {
                     }
                 }
             }
-        }            
+        }
+        releasePrefetched();
+        pending.clear();            
  
         // Set it to build after everything else... but note that
         // a shutdown is probably coming soon so if there are still
@@ -228,6 +357,119 @@ public class PagedGrid {
         return trackViewLocation;
     }
  
+    /**
+     *  Set to false to only tell zones their center-relative grid location
+     *  when they are created.  This saves visiting every zone whenever
+     *  the center cell changes for zones that don't care about their
+     *  relative location.  Defaults to true.
+     */   
+    public void setTrackRelativeLocation( boolean b ) {
+        this.trackRelativeLocation = b;
+    }
+    
+    public boolean getTrackRelativeLocation() {
+        return trackRelativeLocation;
+    }
+ 
+    /**
+     *  Sets an optional cache that will keep the built results of 
+     *  released CacheableZones so that revisiting a cell can skip building
+     *  and go straight to apply().  The cache can be shared with other
+     *  paged grids.  Defaults to null, ie: no caching.
+     */   
+    public void setZoneCache( ZoneCache zoneCache ) {
+        this.zoneCache = zoneCache;
+    }
+    
+    public ZoneCache getZoneCache() {
+        return zoneCache;
+    }
+ 
+    /**
+     *  Sets an optional cache of source data tiles that this grid's zones
+     *  can share while they build.  Child grids without their own tile cache
+     *  use their parent's.  The grid keeps the cache's eviction center 
+     *  following its own center.  Defaults to null.
+     */   
+    public void setTileCache( TileCache<?> tileCache ) {
+        this.tileCache = tileCache;
+        if( tileCache != null && xCenterCell != Integer.MIN_VALUE ) {
+            tileCache.setCenter(xWorld, zWorld);
+        }
+    }
+ 
+    /**
+     *  Returns this grid's tile cache or its parent's if it doesn't have
+     *  one.  This is safe to call from builder threads.
+     */   
+    @SuppressWarnings("unchecked")
+    public <T> TileCache<T> getTileCache() {
+        TileCache<?> result = tileCache;
+        if( result == null && parent != null ) {
+            return parent.getTileCache();
+        }
+        return (TileCache<T>)result;
+    }
+ 
+    /**
+     *  Sets an optional persistent store for the build results of 
+     *  PersistentZones.  The first time a zone is built it will load its
+     *  results from the store if they are there and otherwise its new 
+     *  results are written to the store.  A store should only be used
+     *  by one paged grid.  Defaults to null.
+     */   
+    public void setZoneStore( ZoneStore zoneStore ) {
+        this.zoneStore = zoneStore;
+    }
+    
+    public ZoneStore getZoneStore() {
+        return zoneStore;
+    }
+ 
+    /**
+     *  Sets how many cells ahead of the current direction of travel
+     *  zones should be speculatively created and built before they come
+     *  into range.  These zones are hidden, are built at a lower priority 
+     *  based on the prefetch priority bias, and are released (canceling 
+     *  any pending build) if the direction changes.  Defaults to 0, ie: 
+     *  no prefetching.  Only supported for root paged grids.
+     */   
+    public void setPrefetchDistance( int distance ) {
+        if( distance != 0 && parent != null ) {
+            throw new IllegalStateException("Prefetch is only supported for root paged grids");
+        }
+        this.prefetchDistance = distance;
+        if( distance == 0 ) {
+            releasePrefetched();
+        }
+        xPrefetchCenter = Integer.MIN_VALUE;
+    }
+    
+    public int getPrefetchDistance() {
+        return prefetchDistance;
+    }
+ 
+    /**
+     *  Sets the priority bias used for speculatively prefetched zones.
+     *  This should be large enough that prefetched zones are built after
+     *  the zones that are actually in range.  Defaults to 4.
+     */   
+    public void setPrefetchPriorityBias( int bias ) {
+        this.prefetchPriorityBias = bias;
+    }
+    
+    public int getPrefetchPriorityBias() {
+        return prefetchPriorityBias;
+    }
+ 
+    /**
+     *  Returns the number of speculatively prefetched zones that haven't
+     *  come into range yet.
+     */   
+    public int getPrefetchedZoneCount() {
+        return prefetched.size();
+    }
+ 
     protected void addChild( PagedGrid child ) {
         if( children == null ) {
             children = new SafeArrayList<PagedGrid>(PagedGrid.class);
@@ -246,9 +488,20 @@ public class PagedGrid {
     }
     
     public void setCenterWorldLocation( float x, float z ) {        
-        if( setCenterCell(grid.toCellX(x), grid.toCellZ(z)) ) {
+        TileCache<?> tiles = tileCache;
+        if( tiles != null ) {
+            tiles.setCenter(x, z);
+        }
+        if( prefetchDistance > 0 ) {
+            updateVelocity(x, z);
+        }
+        boolean moved = setCenterCell(grid.toCellX(x), grid.toCellZ(z)); 
+        if( moved ) {
             recalculateCorner();            
         }        
+        if( prefetchDistance > 0 ) {
+            updatePrefetch(moved);
+        }
  
         this.xWorld = x;
         this.zWorld = z;
@@ -258,10 +511,13 @@ public class PagedGrid {
         // Let the center cells know that the position has moved
         if( trackViewLocation ) {
             //long start = System.nanoTime();
-            for( int i = radius - 1; i <= radius + 1; i++ ) {
-                for( int j = radius - 1; j <= radius + 1; j++ ) {                    
+            for( int i = xCenterCell - 1; i <= xCenterCell + 1; i++ ) {
+                for( int j = zCenterCell - 1; j <= zCenterCell + 1; j++ ) {                    
                     for( int layer = 0; layer < layers; layer++ ) {
-                        cells[i][layer][j].zone.setViewLocation(x, z);
+                        ZoneProxy ref = cells[toIndex(i)][layer][toIndex(j)];
+                        if( ref != null ) { 
+                            ref.zone.setViewLocation(x, z);
+                        }
                     }
                 }
             }
@@ -276,15 +532,210 @@ public class PagedGrid {
         }
     }
  
+    protected void updateVelocity( float x, float z ) {
+        float cellSize = grid.getCellSize().x;
+        float dx = (x - xWorld) / cellSize;
+        float dz = (z - zWorld) / cellSize;
+        if( xCenterCell == Integer.MIN_VALUE || Math.abs(dx) >= size || Math.abs(dz) >= size ) {
+            // A jump tells us nothing about where we are going
+            xVelocity = 0;
+            zVelocity = 0;
+            return;
+        }
+        xVelocity += (dx - xVelocity) * VELOCITY_SMOOTHING;
+        zVelocity += (dz - zVelocity) * VELOCITY_SMOOTHING;
+    }
+ 
+    /**
+     *  Creates speculative zones for the cells that would come into range
+     *  over the next prefetchDistance cells of travel and releases the ones
+     *  that no longer would.  Prefetched zones that have come within the
+     *  release margin are moved into the cells as hidden zones.
+     */   
+    protected void updatePrefetch( boolean moved ) {
+        int xDir = 0;
+        int zDir = 0;
+        float speed = (float)Math.sqrt(xVelocity * xVelocity + zVelocity * zVelocity);
+        if( speed >= MIN_PREFETCH_SPEED ) {
+            xDir = Math.round(xVelocity / speed * prefetchDistance);
+            zDir = Math.round(zVelocity / speed * prefetchDistance);
+        }
+        boolean known = xPrefetchCenter != Integer.MIN_VALUE;
+        boolean turned = !known || xDir != xPrefetchDir || zDir != zPrefetchDir;
+        if( !moved && !turned ) {
+            return;
+        }
+        int xOld = xPrefetchCenter;
+        int zOld = zPrefetchCenter;
+        int xOldDir = xPrefetchDir;
+        int zOldDir = zPrefetchDir;
+        xPrefetchCenter = xCenterCell;
+        zPrefetchCenter = zCenterCell;
+        xPrefetchDir = xDir;
+        zPrefetchDir = zDir;
+ 
+        for( Iterator<ZoneProxy> it = prefetched.values().iterator(); it.hasNext(); ) {
+            ZoneProxy ref = it.next();
+            Zone zone = ref.zone;
+            int xCell = zone.getXCell();
+            int yCell = zone.getYCell();
+            int zCell = zone.getZCell();
+            if( isInRange(xCell, zCell) ) {
+                it.remove();
+                if( shape.contains(xCell - xCenterCell, zCell - zCenterCell, radius + releaseMargin)
+                    && getWorldCell(xCell, yCell, zCell) == null ) {
+                    // Keep it as a hidden zone in the margin
+                    cells[toIndex(xCell)][yCell][toIndex(zCell)] = ref;
+                    ref.adopt(false);
+                } else {
+                    ref.markForRelease();
+                }
+            } else if( !isPrefetchWanted(xCell, zCell, xCenterCell, zCenterCell, xDir, zDir, prefetchDistance) ) {
+                it.remove();
+                ref.markForRelease();
+            }
+        }
+        if( xDir == 0 && zDir == 0 ) {
+            return;
+        }
+ 
+        // Find the cells beyond the ring buffer that each step along the 
+        // predicted path needs and that weren't already prefetched.  When
+        // we've moved one cell in the same direction, only the strip that
+        // each step has newly moved over needs to be visited.
+        boolean strip = !turned && Math.abs(xCenterCell - xOld) <= 1 && Math.abs(zCenterCell - zOld) <= 1;
+        int outer = radius + releaseMargin;
+        CellBatch cells = cellBatch;
+        cells.clear();
+        for( int step = 1; step <= prefetchDistance; step++ ) {
+            int xStep = xCenterCell + toPrefetchOffset(xDir, step);
+            int zStep = zCenterCell + toPrefetchOffset(zDir, step);
+            int xPrev = xOld + toPrefetchOffset(xOldDir, step);
+            int zPrev = zOld + toPrefetchOffset(zOldDir, step);
+            for( int x = xStep - radius; x <= xStep + radius; x++ ) {
+                int h = shape.getHalfExtent(x - xStep, radius);
+                
+                // The parts of the column that are in the ring buffer now, 
+                // were in it last time, and that this step covered last time
+                int zRangeMin = Integer.MAX_VALUE;
+                int zRangeMax = Integer.MIN_VALUE;
+                if( Math.abs(x - xCenterCell) <= outer ) {
+                    zRangeMin = zCenterCell - outer;
+                    zRangeMax = zCenterCell + outer;
+                }
+                int zOldRangeMin = Integer.MAX_VALUE;
+                int zOldRangeMax = Integer.MIN_VALUE;
+                int zPrevMin = Integer.MAX_VALUE;
+                int zPrevMax = Integer.MIN_VALUE;
+                if( strip ) {
+                    if( Math.abs(x - xOld) <= outer ) {
+                        zOldRangeMin = zOld - outer;
+                        zOldRangeMax = zOld + outer;
+                    }
+                    int hPrev = shape.getHalfExtent(x - xPrev, radius);
+                    if( hPrev >= 0 ) {
+                        zPrevMin = zPrev - hPrev;
+                        zPrevMax = zPrev + hPrev;
+                    }
+                }
+                for( int z = zStep - h; z <= zStep + h; z++ ) {
+                    if( z >= zRangeMin && z <= zRangeMax ) {
+                        z = zRangeMax;
+                        continue;
+                    }
+                    if( z >= zPrevMin && z <= zPrevMax && (z < zOldRangeMin || z > zOldRangeMax) ) {
+                        // Prefetched for this step last time
+                        z = z < zOldRangeMin ? Math.min(zPrevMax, zOldRangeMin - 1) : zPrevMax;
+                        continue;
+                    }
+                    if( isPrefetchWanted(x, z, xCenterCell, zCenterCell, xDir, zDir, step - 1) ) {
+                        continue;
+                    }
+                    if( known && !isInRange(x, z, xOld, zOld)
+                        && isPrefetchWanted(x, z, xOld, zOld, xOldDir, zOldDir, prefetchDistance) ) {
+                        // Already prefetched last time
+                        continue;
+                    }
+                    for( int y = 0; y < layers; y++ ) {
+                        if( !known && !prefetched.isEmpty() 
+                            && prefetched.containsKey(prefetchKey.set(x, y, z)) ) {
+                            continue;
+                        }
+                        cells.add(x, y, z);
+                    }
+                }
+            }
+        }
+ 
+        Zone[] zones = createZones(cells);
+        for( int i = 0; i < zones.length; i++ ) {
+            ZoneProxy ref = new ZoneProxy(zones[i]);
+            ref.speculative = true;
+            ref.setRetained(true);
+            prefetched.put(new CellKey(null, cells.x[i], cells.y[i], cells.z[i]), ref);
+            ref.updateLocation(tempLocation);
+            ref.zone.setRelativeGridLocation(cells.x[i] - xCenterCell, cells.y[i], cells.z[i] - zCenterCell);
+            ref.queueBuild();
+        }
+    }
+ 
+    /**
+     *  Returns the offset from the center of the specified step along a 
+     *  prefetch direction that reaches 'dir' at the last step.
+     */
+    private int toPrefetchOffset( int dir, int step ) {
+        return Math.round((float)dir * step / prefetchDistance);
+    }
+ 
+    /**
+     *  Returns true if the cell is within the shape around any of the
+     *  first 'steps' steps along the prefetch direction from the specified
+     *  center.
+     */
+    private boolean isPrefetchWanted( int x, int z, int xCenter, int zCenter, 
+                                      int xDir, int zDir, int steps ) {
+        if( xDir == 0 && zDir == 0 ) {
+            return false;
+        }
+        for( int step = 1; step <= steps; step++ ) {
+            int xStep = xCenter + toPrefetchOffset(xDir, step);
+            int zStep = zCenter + toPrefetchOffset(zDir, step);
+            if( shape.contains(x - xStep, z - zStep, radius) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+ 
+    protected void releasePrefetched() {
+        for( ZoneProxy ref : prefetched.values() ) {
+            ref.markForRelease();
+        }
+        prefetched.clear();
+        xPrefetchCenter = Integer.MIN_VALUE;
+    }
+ 
     protected void recalculateCorner() {
-        xCornerWorld = grid.toWorldX(xCenterCell - radius);
-        zCornerWorld = grid.toWorldZ(zCenterCell - radius);        
+        xCornerWorld = grid.toWorldX(xCornerCell);
+        zCornerWorld = grid.toWorldZ(zCornerCell);        
     }
     
     public void rebuildCell( int xWorld, int yWorld, int zWorld ) {
         int xCell = grid.toCellX(xWorld);
         int yCell = grid.toCellY(yWorld);
         int zCell = grid.toCellZ(zWorld);
+ 
+        // Any cached results for the cell are now stale
+        if( zoneCache != null ) {
+            zoneCache.invalidate(this, xCell, yCell, zCell);
+        }
+        if( zoneStore != null ) {
+            try {
+                zoneStore.invalidate(xCell, yCell, zCell);
+            } catch( IOException e ) {
+                log.warn("Error invalidating stored cell:" + xCell + ", " + yCell + ", " + zCell, e);
+            }
+        }
     
         ZoneProxy zone = getWorldCell(xCell, yCell, zCell);
         if( zone == null ) {
@@ -293,24 +744,47 @@ public class PagedGrid {
         zone.rebuild();    
     } 
  
+    /**
+     *  Returns the index in the cells array for the specified world
+     *  cell coordinate.  The cells array is a ring buffer in x and z so
+     *  that cells never need to be moved when the center changes.
+     */
+    protected final int toIndex( int cell ) {
+        int i = cell % size;
+        return i < 0 ? i + size : i;
+    }
+ 
+    protected final boolean isInRange( int xCellWorld, int zCellWorld ) {
+        if( xCenterCell == Integer.MIN_VALUE ) {
+            return false;
+        }
+        return isInRange(xCellWorld, zCellWorld, xCenterCell, zCenterCell);
+    }
+ 
+    private boolean isInRange( int xCellWorld, int zCellWorld, int xCenter, int zCenter ) {
+        int outer = radius + releaseMargin;
+        if( xCellWorld < xCenter - outer || xCellWorld > xCenter + outer ) {
+            return false;
+        }
+        if( zCellWorld < zCenter - outer || zCellWorld > zCenter + outer ) {
+            return false;
+        }
+        return true;
+    }
+ 
     protected ZoneProxy getWorldCell( int xCellWorld, int yCellWorld, int zCellWorld ) { 
-        int x = xCellWorld - (xCenterCell - radius);
-        int z = zCellWorld - (zCenterCell - radius);
-        if( x < 0 || z < 0 )
-            return null;
-        if( x >= size || z >= size )
+        if( !isInRange(xCellWorld, zCellWorld) ) {
             return null;
-        return cells[x][yCellWorld][z];           
+        }
+        return cells[toIndex(xCellWorld)][yCellWorld][toIndex(zCellWorld)];           
     }
  
     protected ZoneProxy removeWorldCell( int xCellWorld, int yCellWorld, int zCellWorld ) {
-        int x = xCellWorld - (xCenterCell - radius);
-        int z = zCellWorld - (zCenterCell - radius);
-        if( x < 0 || z < 0 )
-            return null;
-        if( x >= size || z >= size )
+        if( !isInRange(xCellWorld, zCellWorld) ) {
             return null;
-        
+        }
+        int x = toIndex(xCellWorld);
+        int z = toIndex(zCellWorld);
         ZoneProxy result = cells[x][yCellWorld][z];
         cells[x][yCellWorld][z] = null;             
         return result;
@@ -320,84 +794,286 @@ public class PagedGrid {
         if( xCenterCell == xNew && zCenterCell == zNew ) {
             return false;
         }
+        
+        int xOld = xCenterCell;
+        int zOld = zCenterCell;
+        boolean jump = xOld == Integer.MIN_VALUE 
+                        || Math.abs(xNew - xOld) >= size 
+                        || Math.abs(zNew - zOld) >= size;
  
-        builder.pause();
+        // Release the cells that are leaving.  Only the parts of each 
+        // column that fall outside of the new area need to be visited.
+        if( jump ) {
+            releasePrefetched();
+            for( int i = 0; i < size; i++ ) {
+                for( int j = 0; j < layers; j++ ) {
+                    for( int k = 0; k < size; k++ ) {
+                        if( cells[i][j][k] != null ) {
+                            cells[i][j][k].markForRelease();
+                            cells[i][j][k] = null;
+                        }
+                    }
+                }
+            }
+        } else {
+            forEachExclusive(xOld, zOld, xNew, zNew, radius + releaseMargin, CellOp.Release);
+            if( releaseMargin > 0 ) {
+                // Zones that left the radius but are still within the
+                // margin are just hidden
+                forEachExclusive(xOld, zOld, xNew, zNew, radius, CellOp.Hide);
+            }
+        }
  
-        int xzSize = (int)grid.getCellSize().x; 
-        int cellHeight = (int)grid.getCellSize().y;
-               
-        // Refresh the grid and offsets
-        // Copy the ones from the old array to the new...
-        // removing from the old as we go.  We'll clean up
-        // the ones we don't use after.
-        ZoneProxy[][][] newCells = new ZoneProxy[size][layers][size];
-        Vector3f temp = new Vector3f();
-        for( int x = -radius; x <= radius; x++ ) {
-            for( int z = -radius; z <= radius; z++ ) {
-                for( int y = 0; y < layers; y++ ) {
-                    
-                    // Remove it from the old array if it exists
-                    ZoneProxy ref = removeWorldCell(xNew + x, y, zNew + z);
-                    if( ref == null ) {
-                        // Need to create one
-                        ref = new ZoneProxy(zoneFactory.createZone(this, xNew + x, y, zNew + z));
-                        
-                        // Tell the zone its relative location before we build it
-                        ref.zone.setRelativeGridLocation(x, y, z);
-                        
-                        if( parent == null ) {
-                            builder.build(ref);
-                        } else {
-                            // We need to depend on parent zone(s).
-                            // The zone won't get built until the parent is built
-                            parent.addDependency(ref, grid); 
-                        }                         
-                    } 
-
-                    newCells[x + radius][y][z + radius] = ref;
-                    Zone zone = ref.zone;
-                    Vector3f pos = grid.toWorld(x + radius, y, z + radius, temp);
-                    zone.getZoneRoot().setLocalTranslation(pos);
-                    zone.resetPriority(xNew, 0, zNew, priorityBias);
-                    
-                    // Tell this zone what it's current center-relative location
-                    // is.  Rebuild it if necessary
-                    if( zone.setRelativeGridLocation(x, y, z) ) {
-                        if( parent == null ) {
-                            // Just rebuild it
-                            builder.build(ref);
-                        } else {
-                            // Let the parent decide when it needs
-                            // to be rebuilt
-                            parent.rebuildChild(ref);
+        xCenterCell = xNew;
+        zCenterCell = zNew;
+ 
+        // Zone positions are relative to a corner cell that only changes
+        // when we've moved far enough that float precision would start to
+        // suffer.  So most moves only need to shift the grid root.
+        if( jump || Math.abs(xNew - radius - xCornerCell) > size 
+                 || Math.abs(zNew - radius - zCornerCell) > size ) {
+            xCornerCell = xNew - radius;
+            zCornerCell = zNew - radius;
+            for( int i = 0; i < size; i++ ) {
+                for( int j = 0; j < layers; j++ ) {
+                    for( int k = 0; k < size; k++ ) {
+                        ZoneProxy ref = cells[i][j][k];
+                        if( ref != null ) {
+                            ref.updateLocation(tempLocation);
                         }
                     }
                 }
             }
+            for( ZoneProxy ref : prefetched.values() ) {
+                ref.updateLocation(tempLocation);
+            }
         }
-        
-        // Remove any dead ones
-        for( int i = 0; i < size; i++ ) {
-            for( int j = 0; j < layers; j++ ) {
-                for( int k = 0; k < size; k++ ) {
-                    if( cells[i][j][k] != null ) {
-                        // Let the zone decide when it gets released.
-                        // It may have children, etc.
-                        cells[i][j][k].markForRelease();
+ 
+        // Create the cells that are entering.  Their zones are created 
+        // all at once at the end so that batch factories can share work.
+        batch = cellBatch;
+        batch.clear();
+        if( jump ) {
+            for( int x = xNew - radius; x <= xNew + radius; x++ ) {
+                int h = shape.getHalfExtent(x - xNew, radius);
+                for( int z = zNew - h; z <= zNew + h; z++ ) {
+                    for( int y = 0; y < layers; y++ ) {
+                        createCell(x, y, z);
                     }
                 }
             }
+        } else {
+            // Entering zones may still be around from when they
+            // were last in range
+            forEachExclusive(xNew, zNew, xOld, zOld, radius, CellOp.Show);
         }
+        createBatch();
  
-        xCenterCell = xNew;
-        zCenterCell = zNew;
+        // Only zones that are still waiting to be built care about
+        // their priority.  The rest will get it refreshed if they
+        // are ever rebuilt.
+        for( ZoneProxy ref : pending ) {
+            ref.resetPriority();
+            
+            // If it's still waiting to be built then move it to
+            // its new place in line.
+            builder.reprioritize(ref);
+        }
  
-        cells = newCells;        
-        builder.resume();
+        if( trackRelativeLocation && !jump ) {
+            // Tell each surviving zone what its current center-relative location
+            // is.  Rebuild it if necessary.  New zones have already been told.
+            for( int x = xNew - radius; x <= xNew + radius; x++ ) {
+                int hNew = shape.getHalfExtent(x - xNew, radius);
+                int hOld = shape.getHalfExtent(x - xOld, radius);
+                if( hNew < 0 || hOld < 0 ) {
+                    continue;
+                }
+                int zMin = Math.max(zNew - hNew, zOld - hOld);
+                int zMax = Math.min(zNew + hNew, zOld + hOld);
+                for( int z = zMin; z <= zMax; z++ ) {
+                    for( int y = 0; y < layers; y++ ) {
+                        ZoneProxy ref = cells[toIndex(x)][y][toIndex(z)];
+                        if( ref.zone.setRelativeGridLocation(x - xNew, y, z - zNew) ) {
+                            if( parent == null ) {
+                                // Just rebuild it
+                                ref.queueBuild();
+                            } else {
+                                // Let the parent decide when it needs
+                                // to be rebuilt
+                                parent.rebuildChild(ref);
+                            }
+                        }
+                    }
+                }
+            }
+        }
         
         return true; 
     }
  
+    private enum CellOp { Show, Hide, Release }
+ 
+    /**
+     *  Visits the cells in the area of radius 'r' centered on xCenter, zCenter 
+     *  that are not in the area of the same radius centered on xOther, zOther
+     *  and applies the specified operation to them.
+     */
+    private void forEachExclusive( int xCenter, int zCenter, int xOther, int zOther, int r, CellOp op ) {
+        for( int x = xCenter - r; x <= xCenter + r; x++ ) {
+            int h = shape.getHalfExtent(x - xCenter, r);
+            if( h < 0 ) {
+                continue;
+            }
+            int hOther = Math.abs(x - xOther) > r ? -1 : shape.getHalfExtent(x - xOther, r);
+            for( int z = zCenter - h; z <= zCenter + h; z++ ) {
+                if( hOther >= 0 ) {
+                    if( z >= zOther - hOther && z <= zOther + hOther ) {
+                        // Skip to the end of the shared part
+                        z = zOther + hOther;
+                        continue;
+                    }
+                }
+                for( int y = 0; y < layers; y++ ) {
+                    apply(op, x, y, z);
+                }
+            }
+        }
+    }
+ 
+    private void apply( CellOp op, int xCell, int yCell, int zCell ) {
+        switch( op ) {
+            case Show:
+                showCell(xCell, yCell, zCell);
+                break;
+            case Hide:
+                ZoneProxy ref = cells[toIndex(xCell)][yCell][toIndex(zCell)];
+                if( ref != null ) {
+                    ref.setRetained(true);
+                }
+                break;
+            case Release:
+                releaseCell(xCell, yCell, zCell);
+                break;
+        }
+    }
+ 
+    /**
+     *  Makes sure the cell has a visible zone, reusing the zone that
+     *  was retained in the release margin if there is one.
+     */   
+    protected void showCell( int xCell, int yCell, int zCell ) {
+        ZoneProxy ref = cells[toIndex(xCell)][yCell][toIndex(zCell)];
+        if( ref == null || ref.releasing ) {
+            // A retained zone may have been released out from under
+            // us by its parent.  In that case we need a new one.
+            createCell(xCell, yCell, zCell);
+            return;
+        }
+        ref.setRetained(false);
+        if( trackRelativeLocation ) {
+            if( ref.zone.setRelativeGridLocation(xCell - xCenterCell, yCell, zCell - zCenterCell) ) {
+                if( parent == null ) {
+                    ref.queueBuild();
+                } else {
+                    parent.rebuildChild(ref);
+                }
+            }
+        }
+    }
+ 
+    protected void releaseCell( int xCell, int yCell, int zCell ) {
+        int x = toIndex(xCell);
+        int z = toIndex(zCell);
+        ZoneProxy ref = cells[x][yCell][z];
+        if( ref == null ) {
+            return;
+        }
+        cells[x][yCell][z] = null;
+        
+        // Let the zone decide when it gets released.
+        // It may have children, etc.
+        ref.markForRelease();
+    }
+ 
+    /**
+     *  Fills the specified cell with a prefetched zone or a new one.  While
+     *  a move is collecting a batch of entering cells, new zones are not
+     *  created until the batch is finished and this returns null.
+     */   
+    protected ZoneProxy createCell( int xCell, int yCell, int zCell ) {
+        if( !prefetched.isEmpty() ) {
+            ZoneProxy ref = prefetched.remove(prefetchKey.set(xCell, yCell, zCell));
+            if( ref != null ) {
+                cells[toIndex(xCell)][yCell][toIndex(zCell)] = ref;
+                ref.adopt(true);
+                return ref;
+            }
+        }
+        if( batch != null ) {
+            batch.add(xCell, yCell, zCell);
+            return null;
+        }
+        return createCell(xCell, yCell, zCell, zoneFactory.createZone(this, xCell, yCell, zCell));
+    }
+ 
+    /**
+     *  Creates the zones for all of the cells collected in the current
+     *  batch and fills their cells.
+     */   
+    private void createBatch() {
+        CellBatch cells = batch;
+        batch = null;
+        Zone[] zones = createZones(cells);
+        for( int i = 0; i < zones.length; i++ ) {
+            createCell(cells.x[i], cells.y[i], cells.z[i], zones[i]);
+        }
+    }
+ 
+    /**
+     *  Creates the zones for the specified cells with a single call if 
+     *  the factory is a BatchZoneFactory or one at a time otherwise.
+     */   
+    private Zone[] createZones( CellBatch cells ) {
+        if( cells.count == 0 ) {
+            return NO_ZONES;
+        }
+        if( zoneFactory instanceof BatchZoneFactory ) {
+            Zone[] result = ((BatchZoneFactory)zoneFactory).createZones(this, 
+                                                Arrays.copyOf(cells.x, cells.count),
+                                                Arrays.copyOf(cells.y, cells.count),
+                                                Arrays.copyOf(cells.z, cells.count));
+            if( result == null || result.length != cells.count ) {
+                throw new IllegalStateException("Factory created " + (result == null ? 0 : result.length) 
+                                                + " zones for " + cells.count + " cells");
+            }
+            return result;
+        }
+        Zone[] result = new Zone[cells.count];
+        for( int i = 0; i < cells.count; i++ ) {
+            result[i] = zoneFactory.createZone(this, cells.x[i], cells.y[i], cells.z[i]);
+        }
+        return result;
+    }
+ 
+    protected ZoneProxy createCell( int xCell, int yCell, int zCell, Zone zone ) {
+        ZoneProxy ref = new ZoneProxy(zone);
+        cells[toIndex(xCell)][yCell][toIndex(zCell)] = ref;
+        
+        // Tell the zone its location and relative location before we build it
+        ref.updateLocation(tempLocation);
+        zone.setRelativeGridLocation(xCell - xCenterCell, yCell, zCell - zCenterCell);
+                        
+        if( parent == null ) {
+            ref.queueBuild();
+        } else {
+            // We need to depend on parent zone(s).
+            // The zone won't get built until the parent is built
+            parent.addDependency(ref, grid); 
+        }
+        return ref;
+    }
+ 
     protected void addDependency( ZoneProxy childZone, Grid childGrid ) {
         // Should really use a bounding box but for now we'll assume
         // one parent hits.
@@ -426,7 +1102,33 @@ public class PagedGrid {
         parentZone.rebuildChild(childZone);        
     }
     
-    protected class ZoneProxy implements BuilderReference {
+    /**
+     *  A growable list of cell locations.
+     */
+    private static class CellBatch {
+        private int[] x = new int[16];
+        private int[] y = new int[16];
+        private int[] z = new int[16];
+        private int count;
+        
+        public void add( int xCell, int yCell, int zCell ) {
+            if( count == x.length ) {
+                x = Arrays.copyOf(x, count * 2);
+                y = Arrays.copyOf(y, count * 2);
+                z = Arrays.copyOf(z, count * 2);
+            }
+            x[count] = xCell;
+            y[count] = yCell;
+            z[count] = zCell;
+            count++;
+        }
+        
+        public void clear() {
+            count = 0;
+        }
+    }
+    
+    protected class ZoneProxy implements StagedReference, DisposableReference {
         private Zone zone;
         
         // Some of this class was written to support multiple
@@ -439,10 +1141,20 @@ public class PagedGrid {
         private boolean applied = false;
         private boolean releasing = false;
         private boolean released = false;
+        private boolean retained = false;
+        private boolean cacheChecked = false;
+        private boolean speculative = false;
+        private boolean recycled = false;
+        private boolean disposalNeeded = false;
+        private volatile int stageCount;
 
         // Set to true if the zone has been built at least once.
         private AtomicBoolean builtOnce = new AtomicBoolean(false);
         
+        // A cached payload waiting for a DeferredZone to be initialized
+        // on the builder thread.
+        private AtomicReference<ZonePayload> deferredPayload = new AtomicReference<ZonePayload>();
+        
         public ZoneProxy( Zone zone ) {
             this.zone = zone;
         }
@@ -450,6 +1162,103 @@ public class PagedGrid {
         public boolean isBuiltOnce() {
             return builtOnce.get();
         }
+ 
+        /**
+         *  Positions the zone relative to the grid's current corner cell.
+         */       
+        protected void updateLocation( Vector3f temp ) {
+            Vector3f pos = grid.toWorld(zone.getXCell() - xCornerCell, zone.getYCell(), 
+                                        zone.getZCell() - zCornerCell, temp);
+            zone.getZoneRoot().setLocalTranslation(pos);
+        }
+ 
+        /**
+         *  Hides or shows the zone when it is being kept in the
+         *  release margin.
+         */
+        protected void setRetained( boolean retained ) {
+            if( this.retained == retained || releasing ) {
+                return;
+            }
+            this.retained = retained;
+            zone.getZoneRoot().setCullHint(retained ? CullHint.Always : CullHint.Inherit);
+        }
+ 
+        /**
+         *  Refreshes the zone's priority from the current center cell.
+         */       
+        protected void resetPriority() {
+            zone.resetPriority(xCenterCell, 0, zCenterCell, 
+                               speculative ? prefetchPriorityBias : priorityBias);
+        }
+ 
+        /**
+         *  Called when a prefetched zone moves into the cells.  Its
+         *  priority and relative location are brought up to date and it
+         *  is shown if requested.
+         */       
+        protected void adopt( boolean show ) {
+            speculative = false;
+            if( show ) {
+                setRetained(false);
+            }
+            if( pending.contains(this) ) {
+                resetPriority();
+                builder.reprioritize(this);
+            }
+            int xCell = zone.getXCell();
+            int yCell = zone.getYCell();
+            int zCell = zone.getZCell();
+            if( zone.setRelativeGridLocation(xCell - xCenterCell, yCell, zCell - zCenterCell) ) {
+                queueBuild();
+            }
+        }
+ 
+        /**
+         *  Refreshes the zone's priority and passes it to the builder.
+         */       
+        protected void queueBuild() {
+            resetPriority();
+            if( !cacheChecked && restoreFromCache() ) {
+                return;
+            }
+            pending.add(this);
+            builder.build(this);
+        }
+ 
+        /**
+         *  Gives the zone its cached payload, if there is one, and passes
+         *  it to the builder to be applied without building.  The cache is
+         *  only checked the first time the zone is queued as rebuilds
+         *  always need fresh results.  DeferredZones are not initialized
+         *  yet so their payload is held until their first build instead.
+         */       
+        private boolean restoreFromCache() {
+            cacheChecked = true;
+            if( zoneCache == null || !(zone instanceof CacheableZone) ) {
+                return false;
+            }
+            ZonePayload payload = zoneCache.remove(PagedGrid.this, zone.getXCell(), 
+                                                   zone.getYCell(), zone.getZCell());
+            if( payload == null ) {
+                return false;
+            }
+            if( zone instanceof DeferredZone ) {
+                deferredPayload.set(payload);
+                return false;
+            }
+            if( !((CacheableZone)zone).restorePayload(payload) ) {
+                payload.release();
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Restored from cache:" + zone);
+            }
+            builtOnce.set(true);
+            releaseWatchDog.put(zone, this);
+            builder.applyBuilt(this);
+            return true;
+        }
 
         public final void attach() {
             gridRoot.attachChild(zone.getZoneRoot());
@@ -464,18 +1273,150 @@ public class PagedGrid {
             return zone.getPriority();
         }
 
+        /**
+         *  Called from the builder thread at the start of every build.
+         *  On the first build, this initializes DeferredZones and tries
+         *  to get the zone's results from the cache or store.  Returns true
+         *  if the zone has its results and doesn't need to be built.
+         */       
+        private boolean prepareBuild() {
+            boolean first = !builtOnce.getAndSet(true);
+            releaseWatchDog.put(zone, this);
+            if( !first ) {
+                return false;
+            }
+            if( zone instanceof DeferredZone ) {
+                if( log.isTraceEnabled() ) {
+                    log.trace("Initializing:" + zone);
+                }
+                ((DeferredZone)zone).initialize();
+                if( restoreDeferred() ) {
+                    return true;
+                }
+            }
+            return loadFromStore();
+        }
+ 
+        /**
+         *  Gives an initialized DeferredZone the payload that was held for 
+         *  it by restoreFromCache().  This runs on the builder thread, which
+         *  the CacheableZone contract allows for DeferredZones, and the zone
+         *  is then applied on the applyUpdates() thread like any other build.
+         */       
+        private boolean restoreDeferred() {
+            ZonePayload payload = deferredPayload.getAndSet(null);
+            if( payload == null ) {
+                return false;
+            }
+            if( !((CacheableZone)zone).restorePayload(payload) ) {
+                payload.release();
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Restored from cache:" + zone);
+            }
+            return true;
+        }
+
         @Override
         public final void build() {
-            builtOnce.set(true);
-            releaseWatchDog.put(zone, this);
+            if( prepareBuild() ) {
+                return;
+            }
             if( log.isTraceEnabled() ) {
                 log.trace("Calling build() on:" + zone);
             }
             zone.build();
+            saveToStore();
+        }
+
+        /**
+         *  Passes the cancellation token on to zones that support it
+         *  and otherwise just calls build().
+         */
+        @Override
+        public final void build( CancellationToken token ) {
+            if( !(zone instanceof CancellableReference) ) {
+                build();
+                return;
+            }
+            if( prepareBuild() ) {
+                return;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Calling build(token) on:" + zone);
+            }
+            ((CancellableReference)zone).build(token);
+            
+            // A canceled build may be incomplete
+            if( !token.isCanceled() ) {
+                saveToStore();
+            }
+        }
+ 
+        /**
+         *  Passes the zone's stages on to the builder if it has any.
+         */
+        @Override
+        public final String[] getStages() {
+            if( !(zone instanceof StagedReference) ) {
+                return null;
+            }
+            String[] result = ((StagedReference)zone).getStages();
+            stageCount = result == null ? 0 : result.length;
+            return result;
+        }
+ 
+        @Override
+        public final boolean build( int stage, CancellationToken token ) {
+            if( stage == 0 && prepareBuild() ) {
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Calling build(" + stage + ", token) on:" + zone);
+            }
+            boolean next = ((StagedReference)zone).build(stage, token);
+            if( (!next || stage + 1 >= stageCount) && !token.isCanceled() ) {
+                saveToStore();
+            }
+            return next;
+        }
+ 
+        /**
+         *  Called from the builder thread to load the zone's results from
+         *  the persistent store instead of building them.  Only done for a
+         *  zone's first build as rebuilds always need fresh results.
+         */       
+        private boolean loadFromStore() {
+            ZoneStore store = zoneStore;
+            if( store == null || !(zone instanceof PersistentZone) ) {
+                return false;
+            }
+            ByteBuffer data = store.read(zone.getXCell(), zone.getYCell(), zone.getZCell());
+            if( data == null ) {
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Loading from store:" + zone);
+            }
+            return ((PersistentZone)zone).load(data);
+        }
+        
+        private void saveToStore() {
+            ZoneStore store = zoneStore;
+            if( store == null || !(zone instanceof PersistentZone) ) {
+                return;
+            }
+            try {
+                store.write(zone.getXCell(), zone.getYCell(), zone.getZCell(), (PersistentZone)zone);
+            } catch( IOException e ) {
+                log.warn("Error storing zone:" + zone, e);
+            }
         }
 
         @Override
         public final void apply( Builder builder ) {
+            pending.remove(this);
             applied = true;
             appliedZoneCount++;
             zone.apply(builder);
@@ -518,10 +1459,13 @@ public class PagedGrid {
                 // But we only care if it's been built at least one time... then
                 // we always need to release.
             } else {
-                if( log.isTraceEnabled() ) {
-                    log.trace("Calling release() on:" + zone);
+                if( !cacheRelease(builder) ) {
+                    if( log.isTraceEnabled() ) {
+                        log.trace("Calling release() on:" + zone);
+                    }
+                    zone.release(builder);
+                    disposalNeeded = zone instanceof DisposableZone;
                 }
-                zone.release(builder);
                 detach();
             }
             
@@ -530,6 +1474,66 @@ public class PagedGrid {
             
             // Now we can let the parents know we are done
             dispose();
+            
+            // A zone still waiting for disposeReleased() is recycled after
+            if( !disposalNeeded ) {
+                recycle();
+            }
+        }
+ 
+        @Override
+        public final boolean needsDisposal() {
+            return disposalNeeded;
+        }
+ 
+        /**
+         *  Called on a builder thread after release() for DisposableZones.
+         */       
+        @Override
+        public final void disposeReleased( Builder builder ) {
+            if( log.isTraceEnabled() ) {
+                log.trace("Calling disposeReleased() on:" + zone);
+            }
+            ((DisposableZone)zone).disposeReleased(builder);
+            recycle();
+        }
+ 
+        /**
+         *  Gives the zone back to a recycling factory.  This must only be
+         *  called once nothing else can be using the zone.  For
+         *  DisposableZones, that is on the builder thread after 
+         *  disposeReleased().
+         */
+        private void recycle() {
+            if( recycled || !(zoneFactory instanceof RecyclingZoneFactory) ) {
+                return;
+            }
+            recycled = true;
+            zone.getZoneRoot().setCullHint(CullHint.Inherit);
+            if( log.isTraceEnabled() ) {
+                log.trace("Recycling:" + zone);
+            }
+            ((RecyclingZoneFactory)zoneFactory).recycleZone(PagedGrid.this, zone);
+        }
+ 
+        /**
+         *  Moves the zone's built results into the cache instead of 
+         *  releasing them.  Returns false if the zone still needs to be
+         *  released normally.
+         */ 
+        private boolean cacheRelease( Builder builder ) {
+            if( zoneCache == null || !(zone instanceof CacheableZone) ) {
+                return false;
+            }
+            ZonePayload payload = ((CacheableZone)zone).detachPayload(builder);
+            if( payload == null ) {
+                return false;
+            }
+            if( log.isTraceEnabled() ) {
+                log.trace("Caching:" + zone);
+            }
+            zoneCache.put(PagedGrid.this, zone.getXCell(), zone.getYCell(), zone.getZCell(), payload);
+            return true;
         }
  
         /**
@@ -542,6 +1546,13 @@ public class PagedGrid {
             if( log.isTraceEnabled() ) {
                 log.trace("dispose():" + zone);
             }
+            
+            // A DeferredZone may have been released before it ever got
+            // its cached payload
+            ZonePayload payload = deferredPayload.getAndSet(null);
+            if( payload != null ) {
+                payload.release();
+            }
                         
             // The need to do this so finally is partially due to how
             // parents keep track of children.  If they tracked built children
@@ -586,6 +1597,7 @@ public class PagedGrid {
                 return;
             }
             releasing = true;
+            pending.remove(this);
                         
             // Regardless of what we do, make the node invisible
             zone.getZoneRoot().setCullHint(CullHint.Always);             
@@ -617,7 +1629,10 @@ public class PagedGrid {
                 } else {
                     // Need to let our parents know to forget us because we 
                     // will never be released
-                    dispose();                    
+                    dispose();
+                    
+                    // And the builder has never seen the zone
+                    recycle();                    
                 }
             }
         }
@@ -640,7 +1655,7 @@ public class PagedGrid {
                 
             // Right now we are only supporting one parent so we 
             // will short cut and assume it is ok for us to build
-            builder.build(this);
+            queueBuild();
         }
         
         protected void rebuild() {
@@ -653,7 +1668,7 @@ public class PagedGrid {
             // case of a rebuild.  
             applied = false;
             appliedZoneCount--;
-            builder.build(this);
+            queueBuild();
         }
  
         protected void addParent( ZoneProxy parent ) {
@@ -700,6 +1715,7 @@ public class PagedGrid {
                         builder.release(this);
                     } else {
                         dispose();
+                        recycle();
                     }
                 }
             }
@@ -0,0 +1,74 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.simsilica.pager;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ *  A Zone whose build results can be written to and loaded from
+ *  a ZoneStore so that they survive restarts.  All of these methods
+ *  are called from the builder threads.
+ *
+ *  @author    Paul Speed
+ */
+public interface PersistentZone extends Zone {
+
+    /**
+     *  Returns the number of bytes that write() needs to store the 
+     *  results of the last build() or -1 if they should not be stored.
+     */
+    public int getStoredSize();
+
+    /**
+     *  Writes the results of the last build() to the specified buffer
+     *  which has exactly getStoredSize() bytes remaining.  The buffer
+     *  is in native byte order.
+     */
+    public void write( ByteBuffer buffer );
+
+    /**
+     *  Called instead of build() the first time the zone is built if
+     *  the store has data for this zone's cell.  The buffer is a read-only
+     *  view directly into the memory-mapped store in native byte order 
+     *  so its contents can be used without copying, for example as mesh data.  
+     *  Return false if the data can't be used and build() will be called
+     *  as usual.
+     */
+    public boolean load( ByteBuffer buffer );
+}
@@ -0,0 +1,65 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.pager;
+
+
+/**
+ *  A ZoneFactory that takes back the zones that a PagedGrid is done 
+ *  with so that it can reuse them for later cells instead of creating new
+ *  ones.  Combined with zones that can be moved to a new cell, like 
+ *  AbstractZone.reset(), steady movement doesn't have to create new zones
+ *  or zone roots at all.
+ *
+ *  @author    Paul Speed
+ */
+public interface RecyclingZoneFactory extends ZoneFactory {
+
+    /**
+     *  Called when the paged grid is completely done with a zone that this
+     *  factory created.  If the zone was ever built then it has been released
+     *  and its zone root has been detached and made visible again.  Neither
+     *  the grid nor its builder will touch the zone again so the factory is
+     *  free to keep it and return it from a later createZone() after moving
+     *  it to the new cell.  Zones that were queued to the builder but never
+     *  built are not recycled as a builder thread could still be starting 
+     *  on them.  This is called on the thread that releases zones, normally
+     *  the one calling Builder.applyUpdates(), except for DisposableZones
+     *  which are recycled on a builder thread after disposeReleased().
+     *  Implementations should be thread safe.
+     */
+    public void recycleZone( PagedGrid pg, Zone zone );
+}
@@ -0,0 +1,322 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.pager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A memory-bounded cache of source data tiles that zones can share
+ *  while they build.  Neighboring zones, and parent and child zones in
+ *  different grids, often read the same source region and a tile only
+ *  needs to be loaded once for all of them.  Tiles are laid out on their
+ *  own Grid which doesn't need to match the grid of any zone.
+ *
+ *  <p>When several threads ask for a tile that is not loaded yet, the
+ *  first one loads it and the rest wait for that load instead of starting
+ *  their own.  When the cache is over its size limit, the tiles furthest
+ *  from the current center are evicted first.  PagedGrids with a tile cache
+ *  keep its center up to date as they move.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class TileCache<T> {
+
+    static Logger log = LoggerFactory.getLogger(TileCache.class);
+
+    private final Grid tileGrid;
+    private final TileLoader<T> loader;
+    private final ConcurrentHashMap<CellKey, Tile<T>> tiles = new ConcurrentHashMap<CellKey, Tile<T>>();
+    
+    // Guarded by 'this'
+    private long maxSize;
+    private long size;
+    
+    private volatile int xCenter;
+    private volatile int zCenter;
+    
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong waits = new AtomicLong();
+    private AtomicLong loads = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+
+    /**
+     *  Creates a cache of tiles laid out on the specified grid that
+     *  will hold up to 'maxSize' bytes of tile data as reported by 
+     *  the loader.
+     */
+    public TileCache( Grid tileGrid, TileLoader<T> loader, long maxSize ) {
+        this.tileGrid = tileGrid;
+        this.loader = loader;
+        this.maxSize = maxSize;
+    }
+    
+    public Grid getTileGrid() {
+        return tileGrid;
+    }
+    
+    public TileLoader<T> getLoader() {
+        return loader;
+    }
+
+    public void setMaxSize( long maxSize ) {
+        synchronized( this ) {
+            this.maxSize = maxSize;
+        }
+        trim();
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public int getCount() {
+        return tiles.size();
+    }
+
+    /**
+     *  Returns the number of requests that found their tile already
+     *  loaded.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     *  Returns the number of requests that waited for another thread
+     *  to load their tile.
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+ 
+    /**
+     *  Sets the world location that eviction is centered on.
+     */   
+    public void setCenter( float xWorld, float zWorld ) {
+        this.xCenter = tileGrid.toCellX(xWorld);
+        this.zCenter = tileGrid.toCellZ(zWorld);
+    }
+
+    /**
+     *  Returns the tile containing the specified world location, loading
+     *  it if necessary.
+     */
+    public T getTileAt( float xWorld, float yWorld, float zWorld ) {
+        return getTile(tileGrid.toCellX(xWorld), tileGrid.toCellY(yWorld), tileGrid.toCellZ(zWorld));
+    }
+
+    /**
+     *  Returns the specified tile, loading it if necessary.  If another 
+     *  thread is already loading the tile then this waits for it to finish.
+     */
+    public T getTile( final int xTile, final int yTile, final int zTile ) {
+        CellKey key = new CellKey(null, xTile, yTile, zTile);
+        Tile<T> tile = tiles.get(key);
+        if( tile == null ) {
+            Tile<T> created = new Tile<T>(key, new FutureTask<T>(new Callable<T>() {
+                    @Override
+                    public T call() {
+                        return loader.loadTile(xTile, yTile, zTile);
+                    }
+                }));
+            tile = tiles.putIfAbsent(key, created);
+            if( tile == null ) {
+                // We get to load it
+                return load(created);
+            }
+        }
+        if( tile.future.isDone() ) {
+            hits.incrementAndGet();
+        } else {
+            waits.incrementAndGet();
+        }
+        return get(tile);
+    }
+    
+    private T load( Tile<T> tile ) {
+        loads.incrementAndGet();
+        if( log.isTraceEnabled() ) {
+            log.trace("Loading:" + tile.key);
+        }
+        tile.future.run();
+        T result;
+        try {
+            result = get(tile);
+        } catch( RuntimeException e ) {
+            // Let the next request try again
+            tiles.remove(tile.key, tile);
+            throw e;
+        }
+        
+        // Only count the tile if it wasn't invalidated while loading
+        boolean overSize;
+        synchronized( this ) {
+            if( tiles.get(tile.key) == tile ) {
+                tile.size = loader.getSize(result);
+                size += tile.size;
+            }
+            overSize = size > maxSize;
+        }
+        if( overSize ) {
+            trim();
+        }
+        return result;
+    }
+    
+    private T get( Tile<T> tile ) {
+        try {
+            return tile.future.get();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for tile:" + tile.key, e);
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException("Error loading tile:" + tile.key, e.getCause());
+        }
+    }
+
+    /**
+     *  Forgets the specified tile so that it will be loaded again the 
+     *  next time it is requested.  This should be called when the tile's
+     *  source data changes.
+     */
+    public synchronized void invalidate( int xTile, int yTile, int zTile ) {
+        Tile<T> tile = tiles.remove(new CellKey(null, xTile, yTile, zTile));
+        if( tile != null ) {
+            size -= tile.size;
+        }
+    }
+
+    /**
+     *  Forgets all of the tiles.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        size = 0;
+    }
+ 
+    /**
+     *  Evicts the loaded tiles furthest from the center until the cache is
+     *  back down to 7/8ths of its size limit so that a full cache doesn't 
+     *  have to do this for every load.  Tiles still loading are left alone.
+     */   
+    private synchronized void trim() {
+        if( size <= maxSize ) {
+            return;
+        }
+        long target = maxSize - maxSize / 8;
+        final int x = xCenter;
+        final int z = zCenter;
+        List<Tile<T>> loaded = new ArrayList<Tile<T>>(tiles.size());
+        for( Tile<T> tile : tiles.values() ) {
+            if( tile.future.isDone() ) {
+                loaded.add(tile);
+            }
+        }
+        Collections.sort(loaded, new Comparator<Tile<T>>() {
+                @Override
+                public int compare( Tile<T> t1, Tile<T> t2 ) {
+                    long d1 = t1.distanceSq(x, z);
+                    long d2 = t2.distanceSq(x, z);
+                    return d1 > d2 ? -1 : (d1 < d2 ? 1 : 0);
+                }
+            });
+        for( Tile<T> tile : loaded ) {
+            if( size <= target ) {
+                break;
+            }
+            if( tiles.remove(tile.key, tile) ) {
+                size -= tile.size;
+                evictions.incrementAndGet();
+                if( log.isTraceEnabled() ) {
+                    log.trace("Evicting:" + tile.key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TileCache[count=" + tiles.size() + ", size=" + size + ", maxSize=" + maxSize
+                + ", hits=" + hits + ", waits=" + waits + ", loads=" + loads 
+                + ", evictions=" + evictions + "]";
+    }
+ 
+    private static class Tile<T> {
+        private final CellKey key;
+        private final FutureTask<T> future;
+        
+        // Set once the tile is loaded and counted.  Guarded by the cache.
+        private long size;
+        
+        public Tile( CellKey key, FutureTask<T> future ) {
+            this.key = key;
+            this.future = future;
+        }
+        
+        public long distanceSq( int x, int z ) {
+            long dx = key.getX() - x;
+            long dz = key.getZ() - z;
+            return dx * dx + dz * dz;
+        }
+    }
+}
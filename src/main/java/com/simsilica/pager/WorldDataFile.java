@@ -0,0 +1,355 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.pager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ *  A memory-mapped file of world data laid out on the cells of a Grid.
+ *  The file holds one fixed size record for every cell in a box of 
+ *  cells.  A zone building a cell gets that cell's record as a view
+ *  directly on the mapped file, so the data is never copied into the
+ *  heap and only the pages that are actually touched are read from disk.
+ *
+ *  <p>Records are stored in x, then z, then y order so that the cells
+ *  of a row are next to each other in the file.  The file is mapped in
+ *  segments of whole records on first use, so files larger than 2 GB are
+ *  fine as long as a single record isn't.  The byte order of the data is
+ *  chosen when the file is created and the returned views use it.</p>
+ *
+ *  <p>Reads are safe from any thread.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class WorldDataFile {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int FILE_MAGIC = 0x50475744; // PGWD
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private final File file;
+    private final Grid grid;
+    private final boolean writable;
+    private final int segmentSize;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private ByteOrder order;
+    private int recordSize;
+    private int xMin;
+    private int yMin;
+    private int zMin;
+    private int xCount;
+    private int yCount;
+    private int zCount;
+    private int recordsPerSegment;
+    private volatile AtomicReferenceArray<ByteBuffer> segments;
+
+    /**
+     *  Opens an existing world data file for reading.
+     */
+    public WorldDataFile( File file, Grid grid ) throws IOException {
+        this(file, grid, false);
+    }
+
+    /**
+     *  Opens an existing world data file.  If writable is true then the
+     *  returned cell views can be used to fill in the data.
+     */
+    public WorldDataFile( File file, Grid grid, boolean writable ) throws IOException {
+        this(file, grid, writable, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     *  Opens an existing world data file that is mapped in segments of
+     *  up to segmentSize bytes, rounded down to whole records.  This 
+     *  only changes how much is mapped at a time, not the file format.
+     */
+    public WorldDataFile( File file, Grid grid, boolean writable, int segmentSize ) throws IOException {
+        if( segmentSize <= 0 ) {
+            throw new IllegalArgumentException("Invalid segment size:" + segmentSize);
+        }
+        this.file = file;
+        this.grid = grid;
+        this.writable = writable;
+        this.segmentSize = segmentSize;
+        this.raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        this.channel = raf.getChannel();
+        try {
+            readHeader();
+        } catch( IOException e ) {
+            channel.close();
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Creates a new world data file with a zeroed record of recordSize
+     *  bytes for every cell in the specified box of cells and opens it 
+     *  for writing.  Any existing file is replaced.
+     */
+    public static WorldDataFile create( File file, Grid grid, ByteOrder order, int recordSize,
+                                        int xMin, int yMin, int zMin,
+                                        int xCount, int yCount, int zCount ) throws IOException {
+        if( recordSize <= 0 || xCount <= 0 || yCount <= 0 || zCount <= 0 ) {
+            throw new IllegalArgumentException("Invalid record size or cell counts");
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(FILE_MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(order == ByteOrder.BIG_ENDIAN ? 1 : 2);
+            header.putInt(recordSize);
+            header.putInt(xMin);
+            header.putInt(yMin);
+            header.putInt(zMin);
+            header.putInt(xCount);
+            header.putInt(yCount);
+            header.putInt(zCount);
+            header.rewind();
+            out.setLength(0);
+            out.getChannel().write(header, 0);
+            out.setLength(HEADER_SIZE + (long)recordSize * xCount * yCount * zCount);
+        } finally {
+            out.close();
+        }
+        return new WorldDataFile(file, grid, true);
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if( channel.read(header, 0) < HEADER_SIZE ) {
+            throw new IOException("Not a world data file:" + file);
+        }
+        header.flip();
+        if( header.getInt() != FILE_MAGIC ) {
+            throw new IOException("Not a world data file:" + file);
+        }
+        int version = header.getInt();
+        if( version != FORMAT_VERSION ) {
+            throw new IOException("Unsupported world data version:" + version + " in:" + file);
+        }
+        this.order = header.getInt() == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.recordSize = header.getInt();
+        this.xMin = header.getInt();
+        this.yMin = header.getInt();
+        this.zMin = header.getInt();
+        this.xCount = header.getInt();
+        this.yCount = header.getInt();
+        this.zCount = header.getInt();
+        long records = (long)xCount * yCount * zCount;
+        if( recordSize <= 0 || records <= 0 || channel.size() < HEADER_SIZE + records * recordSize ) {
+            throw new IOException("Truncated or corrupt world data file:" + file);
+        }
+        this.recordsPerSegment = Math.max(1, segmentSize / recordSize);
+        int segmentCount = (int)((records + recordsPerSegment - 1) / recordsPerSegment);
+        this.segments = new AtomicReferenceArray<ByteBuffer>(segmentCount);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Grid getGrid() {
+        return grid;
+    }
+
+    public ByteOrder getOrder() {
+        return order;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public int getXMin() {
+        return xMin;
+    }
+
+    public int getYMin() {
+        return yMin;
+    }
+
+    public int getZMin() {
+        return zMin;
+    }
+
+    public int getXCount() {
+        return xCount;
+    }
+
+    public int getYCount() {
+        return yCount;
+    }
+
+    public int getZCount() {
+        return zCount;
+    }
+
+    /**
+     *  Returns true if the file has a record for the specified cell.
+     */
+    public boolean contains( int xCell, int yCell, int zCell ) {
+        return xCell >= xMin && xCell - xMin < xCount
+            && yCell >= yMin && yCell - yMin < yCount
+            && zCell >= zMin && zCell - zMin < zCount;
+    }
+
+    /**
+     *  Returns the position in the file of the record for the specified
+     *  cell or -1 if the file doesn't cover it.  This is for tools and 
+     *  readers that don't use getCell().
+     */
+    public long getOffset( int xCell, int yCell, int zCell ) {
+        if( !contains(xCell, yCell, zCell) ) {
+            return -1;
+        }
+        return HEADER_SIZE + recordIndex(xCell, yCell, zCell) * recordSize;
+    }
+
+    private long recordIndex( int xCell, int yCell, int zCell ) {
+        return (xCell - xMin) + (long)xCount * ((zCell - zMin) + (long)zCount * (yCell - yMin));
+    }
+
+    /**
+     *  Returns a view of the record for the cell containing the specified
+     *  world location or null if the file doesn't cover it.
+     */
+    public ByteBuffer getCellAt( float xWorld, float yWorld, float zWorld ) {
+        return getCell(grid.toCellX(xWorld), grid.toCellY(yWorld), grid.toCellZ(zWorld));
+    }
+
+    /**
+     *  Returns a view of the record for the specified cell or null if 
+     *  the file doesn't cover it.  The view is directly backed by the 
+     *  mapped file, uses the file's byte order, and is read-only unless
+     *  the file was opened for writing.  It remains valid until the file
+     *  is closed.
+     */
+    public ByteBuffer getCell( int xCell, int yCell, int zCell ) {
+        if( !contains(xCell, yCell, zCell) ) {
+            return null;
+        }
+        long index = recordIndex(xCell, yCell, zCell);
+        int seg = (int)(index / recordsPerSegment);
+        int pos = (int)(index % recordsPerSegment) * recordSize;
+        ByteBuffer dup;
+        try {
+            dup = segment(seg).duplicate();
+        } catch( IOException e ) {
+            throw new RuntimeException("Error mapping world data:" + file, e);
+        }
+        dup.limit(pos + recordSize);
+        dup.position(pos);
+        ByteBuffer result = dup.slice();
+        if( !writable ) {
+            result = result.asReadOnlyBuffer();
+        }
+        return result.order(order);
+    }
+
+    private ByteBuffer segment( int seg ) throws IOException {
+        AtomicReferenceArray<ByteBuffer> current = segments;
+        if( current == null ) {
+            throw new IllegalStateException("World data file is closed:" + file);
+        }
+        ByteBuffer result = current.get(seg);
+        if( result != null ) {
+            return result;
+        }
+        long records = (long)xCount * yCount * zCount;
+        long first = (long)seg * recordsPerSegment;
+        long size = Math.min(recordsPerSegment, records - first) * recordSize;
+        MappedByteBuffer mapped = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                                              HEADER_SIZE + first * recordSize, size);
+        // If another thread beat us to it then it's just a duplicate 
+        // mapping of the same pages
+        current.compareAndSet(seg, null, mapped);
+        return current.get(seg);
+    }
+
+    /**
+     *  Forces any changes to disk.
+     */
+    public synchronized void flush() {
+        AtomicReferenceArray<ByteBuffer> current = segments;
+        if( current == null || !writable ) {
+            return;
+        }
+        for( int i = 0; i < current.length(); i++ ) {
+            ByteBuffer buffer = current.get(i);
+            if( buffer != null ) {
+                ((MappedByteBuffer)buffer).force();
+            }
+        }
+    }
+
+    /**
+     *  Flushes and closes the file.  Views returned from getCell() must 
+     *  not be used after this.  Note: the mappings themselves are only 
+     *  released when the buffers are garbage collected.
+     */
+    public synchronized void close() throws IOException {
+        if( channel == null ) {
+            return;
+        }
+        flush();
+        segments = null;
+        channel.close();
+        raf.close();
+        channel = null;
+        raf = null;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldDataFile[" + file + ", recordSize=" + recordSize 
+                + ", min=(" + xMin + ", " + yMin + ", " + zMin + ")"
+                + ", count=(" + xCount + ", " + yCount + ", " + zCount + ")]";
+    }
+}
@@ -46,6 +46,12 @@ import com.simsilica.builder.BuilderReference;
  *  system.  Zones are setup to be built in a Builder and
  *  managed in a Pager.  The specific 'thing' being built
  *  is up to the implementor.
+ *  Zones that also implement CancellableReference will be told
+ *  when they are released while still being built and zones that
+ *  implement StagedReference can split their build across the
+ *  builder's stage pools.  Zones that implement DeferredZone do 
+ *  their expensive setup on a builder thread and zones that implement
+ *  DisposableZone destroy their results on one.
  *
  *  @author    Paul Speed
  */
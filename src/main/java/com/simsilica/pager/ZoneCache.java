@@ -0,0 +1,180 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.simsilica.pager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A memory-bounded least-recently-used cache of the built results
+ *  of released zones, keyed by paged grid and cell.  A cache can be
+ *  shared by several paged grids.  When a paged grid with a cache
+ *  needs a zone for a cell that is in the cache then the zone is given
+ *  the cached payload and goes straight to apply() without being built.
+ *  Only zones that implement CacheableZone are cached.
+ *
+ *  @author    Paul Speed
+ */
+public class ZoneCache {
+
+    static Logger log = LoggerFactory.getLogger(ZoneCache.class);
+
+    private final LinkedHashMap<CellKey, ZonePayload> entries 
+                = new LinkedHashMap<CellKey, ZonePayload>(16, 0.75f, true);
+    private long maxSize;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     *  Creates a cache that will hold up to 'maxSize' bytes of 
+     *  payloads as reported by ZonePayload.getSize().
+     */
+    public ZoneCache( long maxSize ) {
+        this.maxSize = maxSize;
+    }
+
+    public synchronized void setMaxSize( long maxSize ) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     *  Adds the payload for the specified cell, releasing any payload
+     *  that was already there and evicting the least recently used 
+     *  payloads as needed to stay within the size limit.
+     */
+    public synchronized void put( Object grid, int xCell, int yCell, int zCell, ZonePayload payload ) {
+        CellKey key = new CellKey(grid, xCell, yCell, zCell);
+        ZonePayload old = entries.put(key, payload);
+        if( old != null ) {
+            size -= old.getSize();
+            old.release();
+        }
+        size += payload.getSize();
+        trim();
+    }
+
+    /**
+     *  Removes and returns the payload for the specified cell or
+     *  returns null if there isn't one.  The caller is responsible for
+     *  releasing the returned payload if it doesn't use it.
+     */
+    public synchronized ZonePayload remove( Object grid, int xCell, int yCell, int zCell ) {
+        ZonePayload result = entries.remove(new CellKey(grid, xCell, yCell, zCell));
+        if( result == null ) {
+            misses++;
+            return null;
+        }
+        hits++;
+        size -= result.getSize();
+        return result;
+    }
+
+    /**
+     *  Releases and forgets any payload for the specified cell.  This
+     *  should be called when a cell's source data changes.
+     */
+    public synchronized void invalidate( Object grid, int xCell, int yCell, int zCell ) {
+        ZonePayload payload = entries.remove(new CellKey(grid, xCell, yCell, zCell));
+        if( payload != null ) {
+            size -= payload.getSize();
+            payload.release();
+        }
+    }
+
+    /**
+     *  Releases and forgets all cached payloads.
+     */
+    public synchronized void clear() {
+        for( ZonePayload payload : entries.values() ) {
+            payload.release();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<CellKey, ZonePayload>> it = entries.entrySet().iterator();
+        while( size > maxSize && it.hasNext() ) {
+            Map.Entry<CellKey, ZonePayload> e = it.next();
+            it.remove();
+            size -= e.getValue().getSize();
+            evictions++;
+            if( log.isTraceEnabled() ) {
+                log.trace("Evicting:" + e.getKey());
+            }
+            e.getValue().release();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ZoneCache[count=" + entries.size() + ", size=" + size + ", maxSize=" + maxSize
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.simsilica.pager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A persistent, append-only store of PersistentZone build results
+ *  for one paged grid, indexed by cell.  The file is memory-mapped in 
+ *  fixed size segments so that stored results can be handed to zones
+ *  as direct buffers without copying.
+ *
+ *  <p>The store has a caller supplied generator version.  If the version
+ *  in an existing file doesn't match then the file is discarded.  This
+ *  is how stale results are dropped when the zone generation code 
+ *  changes.  Individual cells can be invalidated with invalidate() and 
+ *  everything with clear().  Superseded records are never overwritten
+ *  while the store is open because zones may still be using them.  Instead,
+ *  writing results that are identical to the stored ones doesn't add a
+ *  record at all and, when the store is opened, the live records are
+ *  compacted to the front of the file if more than half of the used space
+ *  is superseded.</p>
+ *
+ *  <p>Reads are safe from any thread.  Writes are serialized.</p>
+ *
+ *  @author    Paul Speed
+ */
+public class ZoneStore {
+
+    static Logger log = LoggerFactory.getLogger(ZoneStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    
+    private static final int FILE_MAGIC = 0x50475A53; // PGZS
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    private static final int EPOCH_OFFSET = 24;
+    private static final int COMPACTING_OFFSET = 28;
+    
+    private static final int RECORD_MAGIC = 0x5A4F4E45; // ZONE
+    private static final int SEGMENT_END = 0x454F5300;  // EOS
+    private static final int RECORD_HEADER_SIZE = 32;
+    private static final int STATE_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 24;
+    
+    private static final int RESERVED = 0;
+    private static final int COMMITTED = 1;
+    private static final int TOMBSTONE = 2;
+
+    private final File file;
+    private final long version;
+    private final int segmentSize;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final ConcurrentHashMap<CellKey, Long> index = new ConcurrentHashMap<CellKey, Long>();
+    private int epoch;
+    private int appendSegment;
+    private int appendPosition;
+
+    /**
+     *  Opens or creates a store in the specified file using the 
+     *  default segment size.
+     */
+    public ZoneStore( File file, long version ) throws IOException {
+        this(file, version, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     *  Opens or creates a store in the specified file.  Any existing
+     *  contents are discarded if they were written with a different
+     *  version, segment size, or byte order.  Records larger than the 
+     *  segment size are never stored.
+     */
+    public ZoneStore( File file, long version, int segmentSize ) throws IOException {
+        if( segmentSize % 8 != 0 || segmentSize <= FILE_HEADER_SIZE + RECORD_HEADER_SIZE ) {
+            throw new IllegalArgumentException("Invalid segment size:" + segmentSize);
+        }
+        this.file = file;
+        this.version = version;
+        this.segmentSize = segmentSize;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        open();
+    }
+
+    public File getFile() {
+        return file;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+ 
+    /**
+     *  Returns the number of cells that currently have stored results.
+     */   
+    public int getCount() {
+        return index.size();
+    }
+ 
+    /**
+     *  Returns the number of bytes of the file that have been used,
+     *  including superseded records.
+     */   
+    public synchronized long getSize() {
+        return (long)appendSegment * segmentSize + appendPosition;
+    }
+
+    private void open() throws IOException {
+        long length = channel.size();
+        if( length >= segmentSize && length % segmentSize == 0 ) {
+            MappedByteBuffer first = map(0);
+            if( first.getInt(0) == FILE_MAGIC && first.getInt(4) == FORMAT_VERSION
+                && first.getLong(8) == version && first.getInt(16) == nativeOrderId()
+                && first.getInt(20) == segmentSize ) {
+                if( first.getInt(COMPACTING_OFFSET) == 0 ) {
+                    epoch = first.getInt(EPOCH_OFFSET);
+                    int segmentCount = (int)(length / segmentSize);
+                    scan(segmentCount);
+                    compactIfNeeded(segmentCount);
+                    return;
+                }
+                log.warn("Discarding zone store with an interrupted compaction:" + file);
+            } else {
+                log.info("Discarding stale zone store:" + file);
+            }
+            index.clear();
+            segments = new MappedByteBuffer[0];
+        }
+        
+        // Start over.  Nothing has been handed out from this file yet so it
+        // is safe to truncate it.
+        channel.truncate(0);
+        MappedByteBuffer first = map(0);
+        first.putInt(0, FILE_MAGIC);
+        first.putInt(4, FORMAT_VERSION);
+        first.putLong(8, version);
+        first.putInt(16, nativeOrderId());
+        first.putInt(20, segmentSize);
+        first.putInt(EPOCH_OFFSET, epoch);
+        first.putInt(COMPACTING_OFFSET, 0);
+        appendSegment = 0;
+        appendPosition = FILE_HEADER_SIZE;
+    }
+    
+    /**
+     *  Rebuilds the index from the records in the file.  Later records
+     *  supersede earlier ones.  Reserved records were never committed, ie:
+     *  a crash during write(), and are skipped. 
+     */
+    private void scan( int segmentCount ) throws IOException {
+        int seg = 0;
+        int pos = FILE_HEADER_SIZE;
+        ByteBuffer buffer = segments[0];
+        while( true ) {
+            int marker = pos < segmentSize ? buffer.getInt(pos) : SEGMENT_END; 
+            if( marker == SEGMENT_END ) {
+                if( seg + 1 >= segmentCount ) {
+                    break;
+                }
+                seg++;
+                pos = 0;
+                buffer = map(seg);
+                continue;
+            }
+            if( marker != RECORD_MAGIC || pos + RECORD_HEADER_SIZE > segmentSize ) {
+                // Either the end of the data or garbage... either way
+                // we append from here.
+                if( marker != 0 ) {
+                    log.warn("Unexpected data in zone store:" + file + " at:" + ((long)seg * segmentSize + pos));
+                }
+                break;
+            }
+            int length = buffer.getInt(pos + LENGTH_OFFSET);
+            if( length < 0 || pos + recordSize(length) > segmentSize ) {
+                log.warn("Corrupt record in zone store:" + file + " at:" + ((long)seg * segmentSize + pos));
+                break;
+            }
+            int recordEpoch = buffer.getInt(pos + 4);
+            int state = buffer.getInt(pos + STATE_OFFSET);
+            if( recordEpoch == epoch ) {
+                CellKey key = new CellKey(null, buffer.getInt(pos + 12), buffer.getInt(pos + 16), 
+                                          buffer.getInt(pos + 20));
+                if( state == COMMITTED ) {
+                    index.put(key, (long)seg * segmentSize + pos);
+                } else if( state == TOMBSTONE ) {
+                    index.remove(key);
+                }
+            }
+            pos += recordSize(length);
+        }
+        appendSegment = seg;
+        appendPosition = pos;
+        if( log.isDebugEnabled() ) {
+            log.debug("Opened zone store:" + file + " cells:" + index.size() + " size:" + getSize());
+        }
+    }
+
+    /**
+     *  Moves the live records to the front of the file, in their original
+     *  order, if more than half of the used space is taken up by superseded,
+     *  invalidated, or cleared records.  This is only done on open before
+     *  anything has been handed out from the file.  Records only ever move
+     *  toward the front so a record is never overwritten before it has been
+     *  moved.  The file header is flagged while this runs so that a file
+     *  left half compacted by a crash is discarded on the next open.
+     */
+    private void compactIfNeeded( int segmentCount ) throws IOException {
+        TreeMap<Long, CellKey> live = new TreeMap<Long, CellKey>();
+        long liveSize = 0;
+        for( Map.Entry<CellKey, Long> e : index.entrySet() ) {
+            long location = e.getValue();
+            live.put(location, e.getKey());
+            liveSize += recordSize(segments[(int)(location / segmentSize)].getInt((int)(location % segmentSize) + LENGTH_OFFSET));
+        }
+        long used = getSize() - FILE_HEADER_SIZE;
+        if( (used - liveSize) * 2 <= used ) {
+            return;
+        }
+        if( log.isDebugEnabled() ) {
+            log.debug("Compacting zone store:" + file + " live:" + liveSize + " used:" + used);
+        }
+        MappedByteBuffer first = segments[0];
+        first.putInt(COMPACTING_OFFSET, 1);
+        first.force();
+        
+        int seg = 0;
+        int pos = FILE_HEADER_SIZE;
+        byte[] temp = new byte[0];
+        for( Map.Entry<Long, CellKey> e : live.entrySet() ) {
+            long location = e.getKey();
+            ByteBuffer from = segments[(int)(location / segmentSize)];
+            int fromPos = (int)(location % segmentSize);
+            int size = recordSize(from.getInt(fromPos + LENGTH_OFFSET));
+            if( pos + size > segmentSize ) {
+                if( pos < segmentSize ) {
+                    segments[seg].putInt(pos, SEGMENT_END);
+                }
+                seg++;
+                pos = 0;
+            }
+            if( (long)seg * segmentSize + pos != location ) {
+                // Copy through an array because the source and destination 
+                // can overlap
+                if( temp.length < size ) {
+                    temp = new byte[size];
+                }
+                ByteBuffer src = from.duplicate();
+                src.position(fromPos);
+                src.get(temp, 0, size);
+                ByteBuffer dest = segments[seg].duplicate();
+                dest.position(pos);
+                dest.put(temp, 0, size);
+                index.put(e.getValue(), (long)seg * segmentSize + pos);
+            }
+            pos += size;
+        }
+        
+        // Make sure that a scan stops at the new end even if the file
+        // can't be shortened
+        if( pos < segmentSize ) {
+            segments[seg].putInt(pos, 0);
+        } else if( seg + 1 < segmentCount ) {
+            segments[seg + 1].putInt(0, 0);
+        }
+        appendSegment = seg;
+        appendPosition = pos;
+        for( MappedByteBuffer buffer : segments ) {
+            buffer.force();
+        }
+        first.putInt(COMPACTING_OFFSET, 0);
+        first.force();
+        
+        if( seg + 1 < segmentCount ) {
+            segments = Arrays.copyOf(segments, seg + 1);
+            try {
+                channel.truncate((long)(seg + 1) * segmentSize);
+            } catch( IOException e ) {
+                // Some platforms won't shorten a file that is still mapped.
+                // The extra segments are just left unused.
+                if( log.isDebugEnabled() ) {
+                    log.debug("Could not shorten zone store:" + file, e);
+                }
+            }
+        }
+    }
+
+    private MappedByteBuffer map( int seg ) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if( seg < current.length ) {
+            return current[seg];
+        }
+        MappedByteBuffer[] array = Arrays.copyOf(current, seg + 1);
+        for( int i = current.length; i <= seg; i++ ) {
+            // Mapping past the end of the file grows it
+            array[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long)i * segmentSize, segmentSize);
+        }
+        segments = array;
+        return array[seg];
+    }
+ 
+    private static int nativeOrderId() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 2;
+    }
+    
+    private static int recordSize( int length ) {
+        return RECORD_HEADER_SIZE + ((length + 7) & ~7);
+    }
+    
+    private static ByteBuffer slice( ByteBuffer buffer, int pos, int length ) {
+        ByteBuffer dup = buffer.duplicate();
+        dup.limit(pos + length);
+        dup.position(pos);
+        return dup.slice();
+    }
+ 
+    /**
+     *  Returns a read-only, native order view of the stored results for
+     *  the specified cell or null if there aren't any.  The view is directly
+     *  backed by the mapped file and remains valid until the store is closed.
+     */   
+    public ByteBuffer read( int xCell, int yCell, int zCell ) {
+        return read(new CellKey(null, xCell, yCell, zCell));
+    }
+    
+    private ByteBuffer read( CellKey key ) {
+        Long location = index.get(key);
+        if( location == null ) {
+            return null;
+        }
+        MappedByteBuffer[] current = segments;
+        int seg = (int)(location / segmentSize);
+        if( seg >= current.length ) {
+            // Closed
+            return null;
+        }
+        int pos = (int)(location % segmentSize);
+        ByteBuffer buffer = current[seg];
+        int length = buffer.getInt(pos + LENGTH_OFFSET);
+        return slice(buffer, pos + RECORD_HEADER_SIZE, length).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     *  Appends the zone's current build results for the specified cell,
+     *  superseding any earlier ones.  If the results are identical to the
+     *  ones already stored for the cell then nothing is added.  Returns false
+     *  if the zone had nothing to store or its results are too large for 
+     *  a segment.
+     */
+    public synchronized boolean write( int xCell, int yCell, int zCell, PersistentZone zone ) throws IOException {
+        checkOpen();
+        int length = zone.getStoredSize();
+        if( length < 0 ) {
+            return false;
+        }
+        int pos = reserve(xCell, yCell, zCell, length);
+        if( pos < 0 ) {
+            if( log.isDebugEnabled() ) {
+                log.debug("Zone too large to store:" + zone + " size:" + length);
+            }
+            return false;
+        }
+        ByteBuffer buffer = segments[appendSegment];
+        
+        // Writing while holding the lock keeps a concurrent clear() or 
+        // close() from pulling the record out from under us.  Serializing the
+        // already built results should be cheap compared to building them.
+        ByteBuffer data = slice(buffer, pos + RECORD_HEADER_SIZE, length);
+        zone.write(data.duplicate().order(ByteOrder.nativeOrder()));
+        
+        CellKey key = new CellKey(null, xCell, yCell, zCell);
+        ByteBuffer existing = read(key);
+        if( existing != null && existing.equals(data) ) {
+            // Nothing changed so take the record back off of the end.  The
+            // magic is cleared so that a scan stops here.
+            buffer.putInt(pos, 0);
+            appendPosition = pos;
+            return true;
+        }
+        
+        buffer.putInt(pos + STATE_OFFSET, COMMITTED);
+        index.put(key, (long)appendSegment * segmentSize + pos);
+        return true;
+    }
+
+    /**
+     *  Forgets any stored results for the specified cell.  This should
+     *  be called when the source data for a cell changes.
+     */
+    public synchronized void invalidate( int xCell, int yCell, int zCell ) throws IOException {
+        checkOpen();
+        if( index.remove(new CellKey(null, xCell, yCell, zCell)) == null ) {
+            return;
+        }
+        int pos = reserve(xCell, yCell, zCell, 0);
+        segments[appendSegment].putInt(pos + STATE_OFFSET, TOMBSTONE);
+    }
+
+    /**
+     *  Forgets all stored results.  The space is not reclaimed until the
+     *  store is reopened with a new version.
+     */
+    public synchronized void clear() {
+        checkOpen();
+        index.clear();
+        epoch++;
+        segments[0].putInt(EPOCH_OFFSET, epoch);
+    }
+
+    /**
+     *  Writes a record header for the specified cell in RESERVED state 
+     *  and returns its position in the current append segment or -1 if 
+     *  the record can't fit in a segment.
+     */
+    private int reserve( int xCell, int yCell, int zCell, int length ) throws IOException {
+        int size = recordSize(length);
+        if( size > segmentSize - FILE_HEADER_SIZE ) {
+            return -1;
+        }
+        if( appendPosition + size > segmentSize ) {
+            if( appendPosition < segmentSize ) {
+                segments[appendSegment].putInt(appendPosition, SEGMENT_END);
+            }
+            map(appendSegment + 1);
+            appendSegment++;
+            appendPosition = 0;
+        }
+        int pos = appendPosition;
+        ByteBuffer buffer = segments[appendSegment];
+        buffer.putInt(pos + 4, epoch);
+        buffer.putInt(pos + STATE_OFFSET, RESERVED);
+        buffer.putInt(pos + 12, xCell);
+        buffer.putInt(pos + 16, yCell);
+        buffer.putInt(pos + 20, zCell);
+        buffer.putInt(pos + LENGTH_OFFSET, length);
+        
+        // The magic goes last so that a scan never sees a partial header
+        buffer.putInt(pos, RECORD_MAGIC);
+        appendPosition += size;
+        return pos;
+    }
+
+    private void checkOpen() {
+        if( channel == null ) {
+            throw new IllegalStateException("Zone store is closed:" + file);
+        }
+    }
+
+    /**
+     *  Forces any changes to disk.
+     */
+    public synchronized void flush() {
+        for( MappedByteBuffer buffer : segments ) {
+            buffer.force();
+        }
+    }
+
+    /**
+     *  Flushes and closes the store.  Buffers returned from read() must not 
+     *  be used after this.  Note: the mappings themselves are only released 
+     *  when the buffers are garbage collected.
+     */
+    public synchronized void close() throws IOException {
+        if( channel == null ) {
+            return;
+        }
+        flush();
+        index.clear();
+        segments = new MappedByteBuffer[0];
+        channel.close();
+        raf.close();
+        channel = null;
+        raf = null;
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneStore[" + file + ", version=" + version + ", cells=" + index.size() + "]";
+    }
+}
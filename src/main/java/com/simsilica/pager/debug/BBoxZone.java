@@ -45,32 +45,58 @@ import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.debug.WireBox;
 import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import com.simsilica.builder.Builder;
 import com.simsilica.pager.AbstractZone;
+import com.simsilica.pager.DirectBufferPool;
+import com.simsilica.pager.DisposableZone;
 import com.simsilica.pager.Grid;
 import com.simsilica.pager.PagedGrid;
+import com.simsilica.pager.RecyclingZoneFactory;
 import com.simsilica.pager.Zone;
-import com.simsilica.pager.ZoneFactory;
 
 
 
 /**
+ *  A debug zone that just shows the bounds of its cell as a wire box.
+ *  When given a DirectBufferPool, the box mesh is built from pooled 
+ *  buffers that go back to the pool on release.  The box's buffers are
+ *  freed on a builder thread after release and the factory recycles 
+ *  released zones.
  *
  *  @author    Paul Speed
  */
-public class BBoxZone extends AbstractZone {
+public class BBoxZone extends AbstractZone implements DisposableZone {
 
     static Logger log = LoggerFactory.getLogger(BBoxZone.class);
 
+    private static final short[] LINE_INDEXES = {
+            0, 1, 1, 2, 2, 3, 3, 0,
+            4, 5, 5, 6, 6, 7, 7, 4,
+            0, 4, 1, 5, 2, 6, 3, 7 
+        };
+
     private Geometry boxGeom;
     private Material material;    
+    private DirectBufferPool bufferPool;
 
     public BBoxZone( Grid grid, Material material, int xCell, int yCell, int zCell ) {
+        this(grid, material, null, xCell, yCell, zCell);
+    }
+    
+    public BBoxZone( Grid grid, Material material, DirectBufferPool bufferPool, 
+                     int xCell, int yCell, int zCell ) {
         super(grid, xCell, yCell, zCell);
         this.material = material;
+        this.bufferPool = bufferPool;
     }
     
     @Override
@@ -82,7 +108,10 @@ public class BBoxZone extends AbstractZone {
             scale = 0.99f;
         }    
         Vector3f size = getGrid().getCellSize();
-        WireBox box = new WireBox(size.x * 0.5f * scale, size.y * 0.5f * scale, size.z * 0.5f * scale);
+        float x = size.x * 0.5f * scale;
+        float y = size.y * 0.5f * scale;
+        float z = size.z * 0.5f * scale;
+        Mesh box = bufferPool != null ? createPooledBox(x, y, z) : new WireBox(x, y, z);
         boxGeom = new Geometry("box", box);
         boxGeom.setLocalTranslation(size.x * 0.5f, size.y * 0.5f, size.z * 0.5f);
         boxGeom.setMaterial(material);
@@ -92,6 +121,37 @@ public class BBoxZone extends AbstractZone {
         }
     }
 
+    /**
+     *  Creates the same mesh as WireBox but from pooled buffers.
+     */
+    protected Mesh createPooledBox( float x, float y, float z ) {
+        FloatBuffer pos = bufferPool.acquireFloats(8 * 3);
+        pos.put(new float[] {
+                -x, -y,  z,   x, -y,  z,   x,  y,  z,  -x,  y,  z,
+                -x, -y, -z,   x, -y, -z,   x,  y, -z,  -x,  y, -z 
+            });
+        pos.flip();
+        ShortBuffer index = bufferPool.acquireShorts(LINE_INDEXES.length);
+        index.put(LINE_INDEXES);
+        index.flip();
+        
+        Mesh mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.Lines);
+        mesh.setBuffer(Type.Position, 3, pos);
+        mesh.setBuffer(Type.Index, 2, index);
+        mesh.updateBound();
+        return mesh;
+    }
+
+    @Override
+    public void reset( int xCell, int yCell, int zCell ) {
+        super.reset(xCell, yCell, zCell);
+        if( boxGeom != null ) {
+            boxGeom.removeFromParent();
+            boxGeom = null;
+        }
+    }
+
     @Override
     public void apply( Builder builder ) {
         getZoneRoot().attachChild(boxGeom);
@@ -99,8 +159,16 @@ public class BBoxZone extends AbstractZone {
 
     @Override
     public void release( Builder builder ) {
+        boxGeom.removeFromParent();
+    }
+
+    @Override
+    public void disposeReleased( Builder builder ) {
         Mesh mesh = boxGeom.getMesh();
         for( VertexBuffer vb : mesh.getBufferList() ) {
+            if( bufferPool != null && bufferPool.release(vb.getData()) ) {
+                continue;
+            }
             if( log.isDebugEnabled() ) {
                 log.debug("--destroying buffer:" + vb);
             }
@@ -108,17 +176,55 @@ public class BBoxZone extends AbstractZone {
         }        
     }
     
-    public static class Factory implements ZoneFactory {
+    public static class Factory implements RecyclingZoneFactory {
         private Material material;
+        private DirectBufferPool bufferPool;
+        
+        // Released zones by grid waiting to be reused
+        private final Map<Grid, ArrayDeque<BBoxZone>> free = new IdentityHashMap<Grid, ArrayDeque<BBoxZone>>();
         
         public Factory( Material material ) {
+            this(material, null);
+        }
+        
+        public Factory( Material material, DirectBufferPool bufferPool ) {
             this.material = material;
+            this.bufferPool = bufferPool;
+        }
+        
+        public DirectBufferPool getBufferPool() {
+            return bufferPool;
         }
         
         @Override
         public Zone createZone( PagedGrid pg, int xCell, int yCell, int zCell ) {
-            Zone result = new BBoxZone(pg.getGrid(), material, xCell, yCell, zCell);
-            return result;   
+            BBoxZone result = null;
+            synchronized( free ) {
+                ArrayDeque<BBoxZone> zones = free.get(pg.getGrid());
+                if( zones != null ) {
+                    result = zones.poll();
+                }
+            }
+            if( result != null ) {
+                result.reset(xCell, yCell, zCell);
+                return result;
+            }
+            return new BBoxZone(pg.getGrid(), material, bufferPool, xCell, yCell, zCell);
+        }
+        
+        @Override
+        public void recycleZone( PagedGrid pg, Zone zone ) {
+            if( !(zone instanceof BBoxZone) ) {
+                return;
+            }
+            synchronized( free ) {
+                ArrayDeque<BBoxZone> zones = free.get(zone.getGrid());
+                if( zones == null ) {
+                    zones = new ArrayDeque<BBoxZone>();
+                    free.put(zone.getGrid(), zones);
+                }
+                zones.push((BBoxZone)zone);
+            }
         }        
     }
 }
@@ -0,0 +1,531 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Drives the PrioritizedRef state transitions from the test thread, 
+ *  playing the part of the render thread with build(), release(), 
+ *  and applyUpdates(), while the executor's workers move references 
+ *  through markProcessing() and markDone().  Checks that no reference 
+ *  is built after it was released, that nothing is applied or released
+ *  twice, and that every reference ends up either idle or released.
+ *  The staged runs also hand StagedReferences between pools from the
+ *  worker threads.
+ *
+ *  @author    Paul Speed
+ */
+public class BuilderLifecycleTest {
+
+    private static final int FRAMES = 2000;
+    private static final int OPS_PER_FRAME = 30;
+    private static final long SETTLE_TIMEOUT = 20000; // ms
+
+    @Test
+    public void priorityExecutor() throws Exception {
+        runLifecycle(new PriorityExecutor("test", 4));
+    }
+
+    @Test
+    public void adaptivePriorityExecutor() throws Exception {
+        runLifecycle(new PriorityExecutor("test", 1, 4));
+    }
+
+    @Test
+    public void forkJoinExecutor() throws Exception {
+        runLifecycle(new ForkJoinBuildExecutor("test", 4));
+    }
+
+    @Test
+    public void virtualThreadExecutor() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 8);
+        if( !executor.isVirtual() ) {
+            executor.shutdown();
+        }
+        Assume.assumeTrue("Virtual threads not available", executor.isVirtual());
+        runLifecycle(executor);
+    }
+
+    @Test
+    public void virtualThreadFallbackExecutor() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 8);
+        if( executor.isVirtual() ) {
+            executor.shutdown();
+        }
+        Assume.assumeFalse("Virtual threads available", executor.isVirtual());
+        runLifecycle(executor);
+    }
+
+    @Test
+    public void stagedPriorityExecutor() throws Exception {
+        runLifecycle(new PriorityExecutor("test", 2), new PriorityExecutor("test-io", 2));
+    }
+
+    @Test
+    public void stagedForkJoinExecutor() throws Exception {
+        runLifecycle(new ForkJoinBuildExecutor("test", 2), new ForkJoinBuildExecutor("test-io", 2));
+    }
+
+    @Test
+    public void stagedVirtualThreadExecutor() throws Exception {
+        runLifecycle(new VirtualThreadExecutor("test", 4), new VirtualThreadExecutor("test-io", 4));
+    }
+
+    @Test
+    public void stagedReleaseWhileQueued() throws Exception {
+        runReleaseWhileQueued(new PriorityExecutor("test-io", 1), true);
+    }
+ 
+    @Test
+    public void stagedReleaseWhileRunningOut() throws Exception {
+        // The stage executor refuses to give the task back so the
+        // worker has to notice the release when it gets there
+        runReleaseWhileQueued(new NoRemoveExecutor(new PriorityExecutor("test-io", 1)), false);
+    }
+ 
+    /**
+     *  Releases references while they wait in the stage queue behind a
+     *  paused stage executor and checks that the stage is never built.
+     */ 
+    private void runReleaseWhileQueued( BuildExecutor stageExecutor, boolean removable ) throws Exception {
+        TestBuilder builder = new TestBuilder(new PriorityExecutor("test", 2));
+        builder.addStage(QueuedStageRef.STAGE, stageExecutor);
+        try {
+            stageExecutor.setPaused(true);
+            
+            List<QueuedStageRef> refs = new ArrayList<QueuedStageRef>();
+            for( int i = 0; i < 20; i++ ) {
+                QueuedStageRef ref = new QueuedStageRef(i);
+                refs.add(ref);
+                builder.build(ref);
+            }
+            
+            // Wait for all of them to get through the first stage
+            long end = System.currentTimeMillis() + SETTLE_TIMEOUT;
+            while( builder.getPendingCount(QueuedStageRef.STAGE) < refs.size() ) {
+                assertTrue("Stage not queued", System.currentTimeMillis() < end);
+                Thread.sleep(1);
+            }
+            
+            for( QueuedStageRef ref : refs ) {
+                release(builder, ref);
+            }
+            if( removable ) {
+                assertEquals(0, builder.getPendingCount(QueuedStageRef.STAGE));
+            }
+            
+            stageExecutor.setPaused(false);
+            settle(builder);
+            
+            assertEquals("Errors:" + builder.errors, 0, builder.errors.size());
+            for( QueuedStageRef ref : refs ) {
+                assertEquals("Stage built after release:" + ref, 0, ref.stageBuilds.get());
+            }
+            checkReleased(builder, refs);
+            assertEquals(0, builder.getManagedCount());
+            assertEquals(refs.size(), builder.getCanceledCount());
+        } finally {
+            builder.shutdown();
+        }
+    }
+ 
+    private void runLifecycle( BuildExecutor executor ) throws Exception {
+        runLifecycle(executor, null);
+    }
+
+    private void runLifecycle( BuildExecutor executor, BuildExecutor stageExecutor ) throws Exception {
+        TestBuilder builder = new TestBuilder(executor);
+        if( stageExecutor != null ) {
+            builder.addStage(StagedTestRef.STAGE, stageExecutor);
+        }
+        try {
+            Random rand = new Random(42);
+            List<TestRef> live = new ArrayList<TestRef>();
+            List<TestRef> released = new ArrayList<TestRef>();
+            
+            for( int frame = 0; frame < FRAMES; frame++ ) {
+                for( int i = 0; i < OPS_PER_FRAME; i++ ) {
+                    int op = rand.nextInt(10);
+                    if( op < 4 || live.isEmpty() ) {
+                        // Some references rebuild or release themselves 
+                        // from their own apply()
+                        TestRef ref = stageExecutor != null 
+                                    ? new StagedTestRef(rand.nextInt(100), rand.nextInt(8))
+                                    : new TestRef(rand.nextInt(100), rand.nextInt(8));
+                        live.add(ref);
+                        builder.build(ref);
+                    } else if( op < 7 ) {
+                        // Rebuild whatever state it happens to be in
+                        builder.build(live.get(rand.nextInt(live.size())));
+                    } else {
+                        TestRef ref = live.remove(rand.nextInt(live.size()));
+                        release(builder, ref);
+                        released.add(ref);
+                    }
+                }
+                if( frame % 50 == 0 ) {
+                    builder.pause();
+                    builder.resume();
+                }
+                if( frame % 2 == 0 ) {
+                    builder.applyUpdates(20);
+                } else {
+                    builder.applyUpdates(200000L, 100000L);
+                }
+                
+                sweepReleased(live, released);
+            }
+            settle(builder);
+            sweepReleased(live, released);
+            
+            assertEquals("Errors:" + builder.errors, 0, builder.errors.size());
+            for( TestRef ref : live ) {
+                assertEquals("Not idle:" + ref, Builder.State.Idle, builder.getState(ref));
+                assertFalse("Built but not applied:" + ref, ref.unapplied);
+                assertEquals("Released while live:" + ref, 0, ref.releases.get());
+            }
+            checkReleased(builder, released);
+            
+            // And everything that was left goes away cleanly
+            for( TestRef ref : live ) {
+                release(builder, ref);
+            }
+            settle(builder);
+            
+            assertEquals("Errors:" + builder.errors, 0, builder.errors.size());
+            checkReleased(builder, live);
+            assertEquals(0, builder.getManagedCount());
+        } finally {
+            builder.shutdown();
+        }
+    }
+
+    private void release( Builder builder, TestRef ref ) {
+        ref.releaseRequested = true;
+        builder.release(ref);
+    }
+
+    /**
+     *  Moves references that released themselves from their own apply()
+     *  to the released list.
+     */
+    private void sweepReleased( List<TestRef> live, List<TestRef> released ) {
+        for( int i = live.size() - 1; i >= 0; i-- ) {
+            TestRef ref = live.get(i);
+            if( ref.releaseRequested ) {
+                live.remove(i);
+                released.add(ref);
+            }
+        }
+    }
+
+    private void checkReleased( Builder builder, List<? extends TestRef> refs ) {
+        for( TestRef ref : refs ) {
+            assertFalse("Still managed:" + ref, builder.isManaged(ref));
+            int expected = ref.builds.get() > 0 ? 1 : 0;
+            assertEquals("Wrong release count:" + ref, expected, ref.releases.get());
+        }
+    }
+
+    /**
+     *  Keeps applying updates until the workers have nothing left
+     *  to do and nothing is left to apply.
+     */
+    private void settle( Builder builder ) throws InterruptedException {
+        long end = System.currentTimeMillis() + SETTLE_TIMEOUT;
+        int quiet = 0;
+        while( quiet < 10 ) {
+            assertTrue("Builder did not settle", System.currentTimeMillis() < end);
+            int processed = builder.applyUpdates(1000);
+            if( processed == 0 && builder.getPendingCount() == 0 && builder.getActiveCount() == 0 ) {
+                quiet++;
+            } else {
+                quiet = 0;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static class TestBuilder extends Builder {
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+
+        public TestBuilder( BuildExecutor executor ) {
+            super("test", executor);
+        }
+
+        @Override
+        protected void handleError( Throwable t ) {
+            errors.add(t);
+        }
+    }
+
+    private class TestRef implements BuilderReference {
+        private final int priority;
+        private final int selfAction;
+        private final AtomicInteger builds = new AtomicInteger();
+        private final AtomicInteger applies = new AtomicInteger();
+        private final AtomicInteger releases = new AtomicInteger();
+        private final AtomicInteger building = new AtomicInteger();
+        private volatile boolean unapplied;
+        protected volatile boolean released;
+        private volatile boolean releaseRequested;
+
+        public TestRef( int priority, int selfAction ) {
+            this.priority = priority;
+            this.selfAction = selfAction;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void build() {
+            if( building.incrementAndGet() != 1 ) {
+                throw new IllegalStateException("Overlapping builds:" + this);
+            }
+            try {
+                if( released ) {
+                    throw new IllegalStateException("Built after release:" + this);
+                }
+                if( unapplied ) {
+                    throw new IllegalStateException("Rebuilt before apply:" + this);
+                }
+                builds.incrementAndGet();
+                spin(5000 + priority * 100);
+                unapplied = true;
+            } finally {
+                building.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void apply( Builder builder ) {
+            if( released ) {
+                throw new AssertionError("Applied after release:" + this);
+            }
+            if( !unapplied ) {
+                throw new AssertionError("Applied twice:" + this);
+            }
+            unapplied = false;
+            int count = applies.incrementAndGet();
+            
+            // A few references call back into the builder from apply()
+            // for their first few applies
+            if( count < 3 && selfAction == 0 ) {
+                builder.build(this);
+            } else if( count == 2 && selfAction == 1 && !releaseRequested ) {
+                releaseRequested = true;
+                builder.release(this);
+            }
+        }
+
+        @Override
+        public void release( Builder builder ) {
+            if( building.get() != 0 ) {
+                throw new AssertionError("Released while building:" + this);
+            }
+            if( releases.incrementAndGet() != 1 ) {
+                throw new AssertionError("Released twice:" + this);
+            }
+            released = true;
+        }
+
+        protected void spin( long nanos ) {
+            long end = System.nanoTime() + nanos;
+            while( System.nanoTime() < end ) {
+                // Spin
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TestRef[" + System.identityHashCode(this) + ", priority=" + priority 
+                    + ", builds=" + builds + ", applies=" + applies + ", releases=" + releases + "]";
+        }
+    }
+
+    /**
+     *  Builds in three stages that move from the stage pool to the main
+     *  pool and back again.
+     */
+    private class StagedTestRef extends TestRef implements StagedReference {
+        static final String STAGE = "io";
+        private final String[] stages = { STAGE, null, STAGE };
+        private volatile int nextStage;
+
+        public StagedTestRef( int priority, int selfAction ) {
+            super(priority, selfAction);
+        }
+
+        @Override
+        public String[] getStages() {
+            return stages;
+        }
+
+        @Override
+        public void build( CancellationToken token ) {
+            build();
+        }
+
+        @Override
+        public boolean build( int stage, CancellationToken token ) {
+            if( stage != nextStage ) {
+                throw new IllegalStateException("Expected stage:" + nextStage + " got:" + stage + " for:" + this);
+            }
+            nextStage = stage + 1 < stages.length ? stage + 1 : 0;
+            if( stage == 0 ) {
+                build();
+                return true;
+            }
+            if( released ) {
+                throw new IllegalStateException("Stage built after release:" + this);
+            }
+            spin(2000);
+            if( token.isCanceled() ) {
+                // The rest of the stages will be skipped
+                nextStage = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     *  Builds once on the main pool and then once on the stage pool. 
+     */
+    private class QueuedStageRef extends TestRef implements StagedReference {
+        static final String STAGE = "io";
+        private final String[] stages = { null, STAGE };
+        private final AtomicInteger stageBuilds = new AtomicInteger();
+ 
+        public QueuedStageRef( int priority ) {
+            super(priority, -1);
+        }
+ 
+        @Override
+        public String[] getStages() {
+            return stages;
+        }
+ 
+        @Override
+        public void build( CancellationToken token ) {
+            build();
+        }
+ 
+        @Override
+        public boolean build( int stage, CancellationToken token ) {
+            if( stage == 0 ) {
+                build();
+            } else {
+                stageBuilds.incrementAndGet();
+            }
+            return true;
+        }
+    }
+ 
+    /**
+     *  Wraps an executor that never gives up a queued task.
+     */
+    private static class NoRemoveExecutor implements BuildExecutor {
+        private final BuildExecutor delegate;
+ 
+        public NoRemoveExecutor( BuildExecutor delegate ) {
+            this.delegate = delegate;
+        }
+ 
+        @Override
+        public void execute( BuildTask task ) {
+            delegate.execute(task);
+        }
+ 
+        @Override
+        public boolean remove( BuildTask task ) {
+            return false;
+        }
+ 
+        @Override
+        public boolean reprioritize( BuildTask task ) {
+            return delegate.reprioritize(task);
+        }
+ 
+        @Override
+        public void reprioritizeAll() {
+            delegate.reprioritizeAll();
+        }
+ 
+        @Override
+        public void setPaused( boolean paused ) {
+            delegate.setPaused(paused);
+        }
+ 
+        @Override
+        public int getQueuedCount() {
+            return delegate.getQueuedCount();
+        }
+ 
+        @Override
+        public int getPoolSize() {
+            return delegate.getPoolSize();
+        }
+ 
+        @Override
+        public int getActiveCount() {
+            return delegate.getActiveCount();
+        }
+ 
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+ 
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+    }
+}
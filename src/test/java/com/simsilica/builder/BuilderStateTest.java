@@ -0,0 +1,150 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.builder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Checks that BuilderState switches between count limited and time
+ *  budgeted updates, including back out of adaptive budgeting.
+ *
+ *  @author    Paul Speed
+ */
+public class BuilderStateTest {
+
+    private static final int MAX_UPDATES = 3;
+    private static final long SETTLE_TIMEOUT = 10000; // ms
+
+    private BuilderState state;
+    private AtomicInteger applies = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        state = new BuilderState("test", 2, MAX_UPDATES);
+    }
+
+    @After
+    public void tearDown() {
+        state.getBuilder().shutdown();
+    }
+
+    @Test
+    public void countMode() throws Exception {
+        queueBuilt(10);
+        state.update(0.016f);
+        assertEquals(MAX_UPDATES, applies.get());
+    }
+
+    @Test
+    public void budgetMode() throws Exception {
+        state.setUpdateBudget(1000000000L, 1000000000L);
+        queueBuilt(10);
+        state.update(0.016f);
+        assertEquals(10, applies.get());
+    }
+
+    @Test
+    public void adaptiveKeepsBudget() {
+        state.setAdaptiveBudget(16000000L, 1000000L, 4000000L);
+        assertEquals(1000000L, state.getReleaseBudget());
+        
+        // Blown frames only shrink the budget to the minimum
+        for( int i = 0; i < 10; i++ ) {
+            state.update(0.1f);
+        }
+        assertEquals(1000000L, state.getApplyBudget());
+        assertEquals(16000000L, state.getTargetFrameTime());
+    }
+
+    @Test
+    public void adaptiveBackToCountMode() throws Exception {
+        state.setAdaptiveBudget(16000000L, 1000000000L, 2000000000L);
+        state.update(0.001f);
+        assertTrue(state.getApplyBudget() > 0);
+        
+        state.setUpdateBudget(0, 0);
+        assertEquals(0, state.getTargetFrameTime());
+        
+        queueBuilt(10);
+        state.update(0.001f);
+        assertEquals(0, state.getApplyBudget());
+        assertEquals(MAX_UPDATES, applies.get());
+    }
+
+    /**
+     *  Builds 'count' references and waits until they are all 
+     *  waiting to be applied.
+     */
+    private void queueBuilt( int count ) throws InterruptedException {
+        final AtomicInteger built = new AtomicInteger();
+        for( int i = 0; i < count; i++ ) {
+            state.getBuilder().build(new BuilderReference() {
+                    @Override
+                    public int getPriority() {
+                        return 0;
+                    }
+
+                    @Override
+                    public void build() {
+                        built.incrementAndGet();
+                    }
+
+                    @Override
+                    public void apply( Builder builder ) {
+                        applies.incrementAndGet();
+                    }
+
+                    @Override
+                    public void release( Builder builder ) {
+                    }
+                });
+        }
+        long end = System.currentTimeMillis() + SETTLE_TIMEOUT;
+        while( built.get() < count || state.getBuilder().getActiveCount() > 0 ) {
+            assertTrue("Builds did not finish", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+        // The last reference can still be on its way to the done pile
+        Thread.sleep(50);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Checks DirectBufferPool's size classes, that views are tracked back
+ *  to the buffers they were borrowed from, that buffers past the idle
+ *  limit are discarded, and that its counters add up.
+ *
+ *  @author    Paul Speed
+ */
+public class DirectBufferPoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void sizeClasses() {
+        DirectBufferPool pool = new DirectBufferPool(64 * MB);
+        
+        // Everything up to 64 bytes is one class and then powers of two
+        checkClass(pool, 1, 64);
+        checkClass(pool, 64, 64);
+        checkClass(pool, 65, 128);
+        checkClass(pool, 128, 128);
+        checkClass(pool, 4095, 4096);
+        checkClass(pool, 4097, 8192);
+        checkClass(pool, 16 * MB, 16 * MB);
+        
+        // Past the largest class buffers are exactly the requested size
+        // and aren't pooled
+        ByteBuffer big = pool.acquire(16 * MB + 1);
+        assertEquals(16 * MB + 1, big.capacity());
+        assertEquals(16 * MB + 1, big.limit());
+        long pooled = pool.getPooledBytes();
+        assertTrue(pool.release(big));
+        assertEquals(1, pool.getDiscardCount());
+        assertEquals(pooled, pool.getPooledBytes());
+        pool.clear();
+        assertEquals(0, pool.getFootprint());
+    }
+
+    private void checkClass( DirectBufferPool pool, int size, int capacity ) {
+        ByteBuffer buffer = pool.acquire(size);
+        assertTrue(buffer.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), buffer.order());
+        assertEquals("Capacity for:" + size, capacity, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(size, buffer.limit());
+        assertTrue(pool.release(buffer));
+        
+        // Anything else in the class gets the same buffer back
+        ByteBuffer again = pool.acquire(capacity);
+        assertSame(buffer, again);
+        assertEquals(capacity, again.limit());
+        assertTrue(pool.release(again));
+    }
+
+    @Test
+    public void views() {
+        DirectBufferPool pool = new DirectBufferPool(MB);
+        
+        FloatBuffer floats = pool.acquireFloats(10);
+        assertTrue(floats.isDirect());
+        assertEquals(10, floats.limit());
+        assertEquals(ByteOrder.nativeOrder(), floats.order());
+        ShortBuffer shorts = pool.acquireShorts(100);
+        assertEquals(100, shorts.limit());
+        assertEquals(ByteOrder.nativeOrder(), shorts.order());
+        IntBuffer ints = pool.acquireInts(1000);
+        assertEquals(1000, ints.limit());
+        assertEquals(ByteOrder.nativeOrder(), ints.order());
+        assertEquals(64 + 256 + 4096, pool.getBorrowedBytes());
+        
+        // Releasing a view gives its whole buffer back but only once
+        assertTrue(pool.release(floats));
+        assertFalse(pool.release(floats));
+        assertTrue(pool.release(shorts));
+        assertTrue(pool.release(ints));
+        assertEquals(0, pool.getBorrowedBytes());
+        assertEquals(64 + 256 + 4096, pool.getPooledBytes());
+        
+        // And the buffer behind it is used for the next request in its class
+        ByteBuffer bytes = pool.acquire(3000);
+        assertEquals(4096, bytes.capacity());
+        assertEquals(1, pool.getHitCount());
+        FloatBuffer reused = pool.acquireFloats(16);
+        assertEquals(16, reused.limit());
+        assertEquals(2, pool.getHitCount());
+        assertTrue(pool.release(bytes));
+        assertTrue(pool.release(reused));
+    }
+
+    @Test
+    public void foreignBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(MB);
+        ByteBuffer borrowed = pool.acquire(100);
+        
+        assertFalse(pool.release(ByteBuffer.allocateDirect(128)));
+        assertFalse(pool.release(ByteBuffer.allocate(128)));
+        assertFalse(pool.release(FloatBuffer.allocate(32)));
+        
+        // A different view of a borrowed buffer isn't the one that was borrowed
+        assertFalse(pool.release(borrowed.asFloatBuffer()));
+        assertFalse(pool.release(borrowed.duplicate()));
+        
+        assertEquals(128, pool.getBorrowedBytes());
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(0, pool.getDiscardCount());
+        assertTrue(pool.release(borrowed));
+        assertEquals(128, pool.getPooledBytes());
+    }
+
+    @Test
+    public void idleLimit() {
+        DirectBufferPool pool = new DirectBufferPool(256);
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for( int i = 0; i < buffers.length; i++ ) {
+            buffers[i] = pool.acquire(100);
+        }
+        assertEquals(512, pool.getBorrowedBytes());
+        assertEquals(512, pool.getFootprint());
+        
+        // Only two of them fit under the limit
+        for( ByteBuffer buffer : buffers ) {
+            assertTrue(pool.release(buffer));
+        }
+        assertEquals(256, pool.getPooledBytes());
+        assertEquals(0, pool.getBorrowedBytes());
+        assertEquals(256, pool.getFootprint());
+        assertEquals(2, pool.getDiscardCount());
+        
+        pool.clear();
+        assertEquals(0, pool.getFootprint());
+    }
+
+    @Test
+    public void counters() {
+        DirectBufferPool pool = new DirectBufferPool(MB);
+        assertEquals(0, pool.getHitRate(), 0);
+        
+        ByteBuffer a = pool.acquire(1000);
+        ByteBuffer b = pool.acquire(1000);
+        assertEquals(2048, pool.getFootprint());
+        pool.release(a);
+        assertEquals(1024, pool.getPooledBytes());
+        assertEquals(1024, pool.getBorrowedBytes());
+        assertEquals(2048, pool.getFootprint());
+        
+        ByteBuffer c = pool.acquire(600);
+        assertSame(a, c);
+        ByteBuffer d = pool.acquire(600);
+        assertNotSame(b, d);
+        assertEquals(4, pool.getRequestCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0.25, pool.getHitRate(), 0.0001);
+        assertEquals(3072, pool.getFootprint());
+        
+        pool.release(b);
+        pool.release(c);
+        pool.release(d);
+        assertEquals(3072, pool.getPooledBytes());
+        assertEquals(0, pool.getBorrowedBytes());
+        assertEquals(0, pool.getDiscardCount());
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import com.jme3.scene.Spatial.CullHint;
+import com.simsilica.builder.Builder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Walks a PagedGrid along straight, diagonal, jittery and jumping paths
+ *  and checks after every move that the live zones are exactly the ones
+ *  the interest shape and release margin call for.
+ *
+ *  @author    Paul Speed
+ */
+public class PagedGridTest {
+
+    private static final float CELL_SIZE = 32;
+    private static final int RADIUS = 3;
+    private static final int LAYERS = 2;
+
+    private Grid grid = new Grid(CELL_SIZE, CELL_SIZE, CELL_SIZE);
+    private Builder builder = new SynchronousBuilder();
+    private Map<CellKey, TestZone> live = new HashMap<CellKey, TestZone>();
+    private List<String> errors = new ArrayList<String>();
+    private int createCount;
+    private int releaseCount;
+
+    @After
+    public void tearDown() {
+        builder.shutdown();
+    }
+
+    @Test
+    public void square() {
+        walk(InterestShape.Square, 0);
+    }
+
+    @Test
+    public void circle() {
+        walk(InterestShape.Circle, 0);
+    }
+
+    @Test
+    public void diamond() {
+        walk(InterestShape.Diamond, 0);
+    }
+
+    @Test
+    public void squareWithMargin() {
+        walk(InterestShape.Square, 2);
+    }
+
+    @Test
+    public void circleWithMargin() {
+        walk(InterestShape.Circle, 2);
+    }
+
+    @Test
+    public void diamondWithMargin() {
+        walk(InterestShape.Diamond, 2);
+    }
+
+    private void walk( InterestShape shape, int margin ) {
+        PagedGrid pg = new PagedGrid(new RecordingZoneFactory(), builder, grid, LAYERS, RADIUS);
+        pg.setInterestShape(shape);
+        pg.setReleaseMargin(margin);
+        int size = 2 * (RADIUS + margin) + 1;
+        
+        Walker w = new Walker(pg, shape, margin);
+        w.moveTo(0, 0);
+        
+        // Straight and then diagonal
+        for( int i = 0; i < 2 * size; i++ ) {
+            w.moveTo(w.x + 1, w.z);
+        }
+        for( int i = 0; i < 2 * size; i++ ) {
+            w.moveTo(w.x + 1, w.z + 1);
+        }
+        
+        // Back across zero into negative cells
+        for( int i = 0; i < 4 * size; i++ ) {
+            w.moveTo(w.x - 1, w.z - 1);
+        }
+        for( int i = 0; i < 2 * size; i++ ) {
+            w.moveTo(w.x, w.z - 1);
+        }
+        
+        // Back and forth across the same boundary
+        int xJitter = w.x;
+        for( int i = 0; i < 20; i++ ) {
+            w.moveTo(xJitter + (i & 1), w.z);
+        }
+        
+        // Moves right around the size of the ring buffer
+        w.moveTo(w.x + size - 1, w.z);
+        w.moveTo(w.x - size + 1, w.z - size + 1);
+        w.moveTo(w.x + size, w.z);
+        w.moveTo(w.x, w.z - size);
+        w.moveTo(w.x - size, w.z + size);
+        
+        // And then a little of everything
+        Random rand = new Random(42);
+        for( int i = 0; i < 500; i++ ) {
+            int op = rand.nextInt(10);
+            if( op < 7 ) {
+                w.moveTo(w.x + rand.nextInt(3) - 1, w.z + rand.nextInt(3) - 1);
+            } else if( op < 9 ) {
+                w.moveTo(w.x + rand.nextInt(2 * size + 1) - size, w.z + rand.nextInt(2 * size + 1) - size);
+            } else {
+                w.moveTo(rand.nextInt(200) - 100, rand.nextInt(200) - 100);
+            }
+        }
+        
+        pg.release();
+        drain();
+        assertEquals("Errors:" + errors, 0, errors.size());
+        assertEquals("Leaked:" + live.values(), 0, live.size());
+        assertEquals(createCount, releaseCount);
+    }
+ 
+    private void drain() {
+        while( builder.applyUpdates(Integer.MAX_VALUE) > 0 ) {
+        }
+    }
+ 
+    /**
+     *  Moves the grid a cell at a time and checks the result of each move.
+     */
+    private class Walker {
+        private final PagedGrid pg;
+        private final InterestShape shape;
+        private final int margin;
+        private final int size;
+        private final Random rand = new Random(0);
+        private int x = Integer.MIN_VALUE;
+        private int z = Integer.MIN_VALUE;
+ 
+        public Walker( PagedGrid pg, InterestShape shape, int margin ) {
+            this.pg = pg;
+            this.shape = shape;
+            this.margin = margin;
+            this.size = 2 * (RADIUS + margin) + 1;
+        }
+ 
+        public void moveTo( int xCell, int zCell ) {
+            boolean jump = x == Integer.MIN_VALUE 
+                            || Math.abs(xCell - x) >= size 
+                            || Math.abs(zCell - z) >= size;
+            x = xCell;
+            z = zCell;
+            
+            // Somewhere inside of the cell
+            float xWorld = grid.toWorldX(xCell) + CELL_SIZE * (0.1f + 0.8f * rand.nextFloat()); 
+            float zWorld = grid.toWorldZ(zCell) + CELL_SIZE * (0.1f + 0.8f * rand.nextFloat());
+            pg.setCenterWorldLocation(xWorld, zWorld);
+            drain();
+            
+            String where = " at:" + x + ", " + z + " " + shape + " margin:" + margin;
+            assertEquals("Errors" + where + ":" + errors, 0, errors.size());
+            int visible = 0;
+            for( TestZone zone : live.values() ) {
+                int dx = zone.getXCell() - x;
+                int dz = zone.getZCell() - z;
+                CullHint hint = zone.getZoneRoot().getLocalCullHint();
+                if( !shape.contains(dx, dz, RADIUS) ) {
+                    // Only allowed as a hidden zone in the margin
+                    assertFalse("Kept through jump:" + zone + where, jump);
+                    assertTrue("Leaked:" + zone + where, shape.contains(dx, dz, RADIUS + margin));
+                    assertEquals("Visible in margin:" + zone + where, CullHint.Always, hint);
+                    continue;
+                }
+                visible++;
+                assertTrue("Not applied:" + zone + where, zone.applied);
+                assertEquals("Not visible:" + zone + where, CullHint.Inherit, hint);
+                assertSame("Not attached:" + zone + where, pg.getGridRoot(), zone.getZoneRoot().getParent());
+                
+                float xLocal = zone.getZoneRoot().getLocalTranslation().x 
+                                + pg.getGridRoot().getLocalTranslation().x;
+                float zLocal = zone.getZoneRoot().getLocalTranslation().z 
+                                + pg.getGridRoot().getLocalTranslation().z;
+                assertEquals("Misplaced:" + zone + where, 
+                             grid.toWorldX(zone.getXCell()) - xWorld, xLocal, 0.01f);
+                assertEquals("Misplaced:" + zone + where, 
+                             grid.toWorldZ(zone.getZCell()) - zWorld, zLocal, 0.01f);
+            }
+            assertEquals("Wrong zone count" + where, shape.getCellCount(RADIUS) * LAYERS, visible);
+        }
+    }
+ 
+    /**
+     *  Builds references immediately on the thread that queues
+     *  them instead of handing them to the worker threads.
+     */
+    private static class SynchronousBuilder extends Builder {
+        public SynchronousBuilder() {
+            super("sync", 1);
+        }
+ 
+        @Override
+        protected void execute( PrioritizedRef pr ) {
+            pr.run();
+        }
+ 
+        @Override
+        protected boolean cancel( PrioritizedRef pr ) {
+            // Nothing is ever waiting to be built
+            return false;
+        }
+    }
+ 
+    private class RecordingZoneFactory implements ZoneFactory {
+        @Override
+        public Zone createZone( PagedGrid pg, int xCell, int yCell, int zCell ) {
+            TestZone zone = new TestZone(xCell, yCell, zCell);
+            TestZone existing = live.put(zone.key, zone);
+            if( existing != null ) {
+                errors.add("Second live zone for:" + existing);
+            }
+            createCount++;
+            return zone;
+        }
+    }
+ 
+    private class TestZone extends AbstractZone {
+        private final CellKey key;
+        private boolean built;
+        private boolean applied;
+        private boolean released;
+ 
+        public TestZone( int xCell, int yCell, int zCell ) {
+            super(grid, xCell, yCell, zCell);
+            this.key = new CellKey(null, xCell, yCell, zCell);
+        }
+ 
+        @Override
+        public void build() {
+            if( released ) {
+                errors.add("Built after release:" + this);
+            }
+            built = true;
+        }
+ 
+        @Override
+        public void apply( Builder builder ) {
+            if( released || !built ) {
+                errors.add("Bad apply:" + this);
+            }
+            applied = true;
+        }
+ 
+        @Override
+        public void release( Builder builder ) {
+            if( released ) {
+                errors.add("Released twice:" + this);
+                return;
+            }
+            released = true;
+            if( live.remove(key) != this ) {
+                errors.add("Released zone wasn't live:" + this);
+            }
+            releaseCount++;
+        }
+    }
+}
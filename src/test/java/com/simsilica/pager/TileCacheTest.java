@@ -0,0 +1,258 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Checks that TileCache loads a tile once no matter how many threads
+ *  ask for it, lets a failed load be tried again, doesn't count tiles
+ *  invalidated while loading, and evicts the tiles furthest from the
+ *  center first.
+ *
+ *  @author    Paul Speed
+ */
+public class TileCacheTest {
+
+    private static final int THREADS = 8;
+    private static final long TILE_SIZE = 100;
+    private static final long TIMEOUT = 10000; // ms
+
+    private Grid grid = new Grid(32, 32, 32);
+    private ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void concurrentGetLoadsOnce() throws Exception {
+        TestLoader loader = new TestLoader();
+        loader.gate = new CountDownLatch(1);
+        TileCache<TestTile> cache = new TileCache<TestTile>(grid, loader, 10000);
+        
+        List<Future<TestTile>> results = getAll(cache, 1, 0, -2, THREADS);
+        
+        // Everyone but the loading thread should end up waiting on it
+        waitFor(cache, THREADS - 1);
+        loader.gate.countDown();
+        
+        TestTile first = results.get(0).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        for( Future<TestTile> result : results ) {
+            assertSame(first, result.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(1, loader.loads.get());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(THREADS - 1, cache.getWaitCount());
+        assertEquals(TILE_SIZE, cache.getSize());
+        
+        // And now it's just a hit
+        assertSame(first, cache.getTile(1, 0, -2));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        TestLoader loader = new TestLoader();
+        loader.gate = new CountDownLatch(1);
+        loader.failures.set(1);
+        TileCache<TestTile> cache = new TileCache<TestTile>(grid, loader, 10000);
+        
+        List<Future<TestTile>> results = getAll(cache, 3, 0, 4, THREADS);
+        waitFor(cache, THREADS - 1);
+        loader.gate.countDown();
+        
+        // Every caller sees the loader's own exception
+        for( Future<TestTile> result : results ) {
+            try {
+                result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+                fail("Expected the load to fail");
+            } catch( ExecutionException e ) {
+                assertTrue("Wrong exception:" + e.getCause(), e.getCause() instanceof IllegalStateException);
+                assertEquals("Failed to load:3, 0, 4", e.getCause().getMessage());
+            }
+        }
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+        
+        // The next request tries again
+        TestTile tile = cache.getTile(3, 0, 4);
+        assertEquals(3, tile.x);
+        assertEquals(4, tile.z);
+        assertEquals(2, loader.loads.get());
+        assertEquals(1, cache.getCount());
+        assertEquals(TILE_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void invalidateWhileLoading() throws Exception {
+        TestLoader loader = new TestLoader();
+        loader.gate = new CountDownLatch(1);
+        TileCache<TestTile> cache = new TileCache<TestTile>(grid, loader, 10000);
+        
+        Future<TestTile> result = getAll(cache, 0, 0, 0, 1).get(0);
+        assertTrue(loader.entered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        cache.invalidate(0, 0, 0);
+        loader.gate.countDown();
+        
+        // The caller still gets its tile but the cache forgets it
+        TestTile stale = result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(stale);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+        
+        TestTile fresh = cache.getTile(0, 0, 0);
+        assertNotSame(stale, fresh);
+        assertEquals(2, loader.loads.get());
+        assertEquals(TILE_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void trimEvictsFurthestFirst() {
+        TestLoader loader = new TestLoader();
+        TileCache<TestTile> cache = new TileCache<TestTile>(grid, loader, 10 * TILE_SIZE);
+        cache.setCenter(16, 16);
+        
+        // Fill it in a ring around the center that gets further out
+        // with each tile
+        for( int i = 0; i <= 10; i++ ) {
+            cache.getTile(i % 2 == 0 ? i : -i, 0, 0);
+        }
+        
+        // The eleventh tile puts the cache over its limit and it is 
+        // trimmed back to 7/8ths, ie: 8 tiles.  The three furthest
+        // tiles are the ones that go.
+        assertEquals(3, cache.getEvictionCount());
+        assertEquals(8, cache.getCount());
+        assertEquals(8 * TILE_SIZE, cache.getSize());
+        for( int i = 0; i < 8; i++ ) {
+            cache.getTile(i % 2 == 0 ? i : -i, 0, 0);
+        }
+        assertEquals(11, loader.loads.get());
+        assertEquals(8, cache.getHitCount());
+        
+        // Moving the center changes which tiles are furthest
+        cache.setCenter(-7 * 32 + 16, 16);
+        cache.setMaxSize(4 * TILE_SIZE);
+        assertEquals(3, cache.getCount());
+        for( int i : new int[] { -7, -5, -3 } ) {
+            cache.getTile(i, 0, 0);
+        }
+        assertEquals(11, cache.getHitCount());
+        assertEquals(11, loader.loads.get());
+    }
+
+    private List<Future<TestTile>> getAll( final TileCache<TestTile> cache, 
+                                           final int x, final int y, final int z, int count ) {
+        List<Future<TestTile>> results = new ArrayList<Future<TestTile>>();
+        for( int i = 0; i < count; i++ ) {
+            results.add(threads.submit(new Callable<TestTile>() {
+                    @Override
+                    public TestTile call() {
+                        return cache.getTile(x, y, z);
+                    }
+                }));
+        }
+        return results;
+    }
+
+    private void waitFor( TileCache<?> cache, int waits ) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while( cache.getWaitCount() < waits ) {
+            assertTrue("Callers never waited", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    private static class TestTile {
+        private final int x;
+        private final int z;
+
+        public TestTile( int x, int z ) {
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    private static class TestLoader implements TileLoader<TestTile> {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private volatile CountDownLatch gate;
+
+        @Override
+        public TestTile loadTile( int xTile, int yTile, int zTile ) {
+            loads.incrementAndGet();
+            entered.countDown();
+            CountDownLatch g = gate;
+            if( g != null ) {
+                try {
+                    if( !g.await(TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                        throw new IllegalStateException("Gate never opened");
+                    }
+                } catch( InterruptedException e ) {
+                    throw new RuntimeException("Interrupted", e);
+                }
+            }
+            if( failures.getAndDecrement() > 0 ) {
+                throw new IllegalStateException("Failed to load:" + xTile + ", " + yTile + ", " + zTile);
+            }
+            return new TestTile(xTile, zTile);
+        }
+
+        @Override
+        public long getSize( TestTile tile ) {
+            return TILE_SIZE;
+        }
+    }
+}
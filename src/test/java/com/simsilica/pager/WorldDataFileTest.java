@@ -0,0 +1,232 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Writes every record of a small world data file through the cell views
+ *  and reads them back, checking the record layout on disk, segment 
+ *  boundaries, negative cell bounds, and read-only views.
+ *
+ *  @author    Paul Speed
+ */
+public class WorldDataFileTest {
+
+    private static final int RECORD_SIZE = 12;
+    
+    // Not a multiple of the record size so that segments are rounded 
+    // down to 8 records
+    private static final int SEGMENT_SIZE = 100;
+    
+    private static final int X_MIN = -3;
+    private static final int Y_MIN = -2;
+    private static final int Z_MIN = -4;
+    private static final int X_COUNT = 5;
+    private static final int Y_COUNT = 3;
+    private static final int Z_COUNT = 6;
+
+    private Grid grid = new Grid(32, 32, 32);
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("worlddata", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        roundTrip(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void roundTripBigEndian() throws IOException {
+        roundTrip(ByteOrder.BIG_ENDIAN);
+    }
+
+    private void roundTrip( ByteOrder order ) throws IOException {
+        WorldDataFile data = WorldDataFile.create(file, grid, order, RECORD_SIZE, 
+                                                  X_MIN, Y_MIN, Z_MIN, X_COUNT, Y_COUNT, Z_COUNT);
+        data.close();
+        
+        // Write through small segments so that plenty of records sit 
+        // on either side of a segment boundary
+        data = new WorldDataFile(file, grid, true, SEGMENT_SIZE);
+        try {
+            for( int y = Y_MIN; y < Y_MIN + Y_COUNT; y++ ) {
+                for( int z = Z_MIN; z < Z_MIN + Z_COUNT; z++ ) {
+                    for( int x = X_MIN; x < X_MIN + X_COUNT; x++ ) {
+                        ByteBuffer cell = data.getCell(x, y, z);
+                        assertFalse(cell.isReadOnly());
+                        assertEquals(order, cell.order());
+                        assertEquals(RECORD_SIZE, cell.remaining());
+                        cell.putInt(x).putInt(y).putInt(z);
+                    }
+                }
+            }
+        } finally {
+            data.close();
+        }
+        
+        // Read it back with the default segments
+        data = new WorldDataFile(file, grid);
+        try {
+            assertEquals(order, data.getOrder());
+            assertEquals(RECORD_SIZE, data.getRecordSize());
+            assertEquals(X_MIN, data.getXMin());
+            assertEquals(Y_MIN, data.getYMin());
+            assertEquals(Z_MIN, data.getZMin());
+            assertEquals(X_COUNT, data.getXCount());
+            assertEquals(Y_COUNT, data.getYCount());
+            assertEquals(Z_COUNT, data.getZCount());
+            checkCells(data);
+        } finally {
+            data.close();
+        }
+        data = new WorldDataFile(file, grid, false, SEGMENT_SIZE);
+        try {
+            checkCells(data);
+        } finally {
+            data.close();
+        }
+        
+        // And the records are where getOffset() says they are in x, then z, 
+        // then y order
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long expected = 64;
+            for( int y = Y_MIN; y < Y_MIN + Y_COUNT; y++ ) {
+                for( int z = Z_MIN; z < Z_MIN + Z_COUNT; z++ ) {
+                    for( int x = X_MIN; x < X_MIN + X_COUNT; x++ ) {
+                        assertEquals(expected, data.getOffset(x, y, z));
+                        byte[] bytes = new byte[RECORD_SIZE];
+                        raf.seek(expected);
+                        raf.readFully(bytes);
+                        ByteBuffer record = ByteBuffer.wrap(bytes).order(order);
+                        assertEquals(x, record.getInt());
+                        assertEquals(y, record.getInt());
+                        assertEquals(z, record.getInt());
+                        expected += RECORD_SIZE;
+                    }
+                }
+            }
+            assertEquals(expected, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void readOnlyViews() throws IOException {
+        WorldDataFile.create(file, grid, ByteOrder.LITTLE_ENDIAN, RECORD_SIZE, 
+                             X_MIN, Y_MIN, Z_MIN, X_COUNT, Y_COUNT, Z_COUNT).close();
+        WorldDataFile data = new WorldDataFile(file, grid, false, SEGMENT_SIZE);
+        try {
+            ByteBuffer cell = data.getCell(-1, -1, -1);
+            assertTrue(cell.isReadOnly());
+            assertTrue(cell.isDirect());
+            try {
+                cell.putInt(0, 42);
+                fail("Expected a read-only view");
+            } catch( ReadOnlyBufferException e ) {
+                // Expected
+            }
+            assertEquals(0, cell.getInt(0));
+        } finally {
+            data.close();
+        }
+    }
+
+    @Test
+    public void bounds() throws IOException {
+        WorldDataFile data = WorldDataFile.create(file, grid, ByteOrder.LITTLE_ENDIAN, RECORD_SIZE, 
+                                                  X_MIN, Y_MIN, Z_MIN, X_COUNT, Y_COUNT, Z_COUNT);
+        try {
+            assertTrue(data.contains(X_MIN, Y_MIN, Z_MIN));
+            assertTrue(data.contains(X_MIN + X_COUNT - 1, Y_MIN + Y_COUNT - 1, Z_MIN + Z_COUNT - 1));
+            int[][] outside = {
+                { X_MIN - 1, 0, 0 }, { X_MIN + X_COUNT, 0, 0 },
+                { 0, Y_MIN - 1, 0 }, { 0, Y_MIN + Y_COUNT, 0 },
+                { 0, 0, Z_MIN - 1 }, { 0, 0, Z_MIN + Z_COUNT }
+            };
+            for( int[] cell : outside ) {
+                assertFalse(data.contains(cell[0], cell[1], cell[2]));
+                assertNull(data.getCell(cell[0], cell[1], cell[2]));
+                assertEquals(-1, data.getOffset(cell[0], cell[1], cell[2]));
+            }
+            
+            // World locations in negative cells
+            data.getCell(-3, -2, -4).putInt(0, 99);
+            assertEquals(99, data.getCellAt(-96 + 0.5f, -64 + 0.5f, -128 + 0.5f).getInt(0));
+            assertEquals(99, data.getCellAt(-64 - 0.5f, -32 - 0.5f, -96 - 0.5f).getInt(0));
+            assertNull(data.getCellAt(-96 - 0.5f, 0, 0));
+        } finally {
+            data.close();
+        }
+    }
+
+    private void checkCells( WorldDataFile data ) {
+        for( int y = Y_MIN; y < Y_MIN + Y_COUNT; y++ ) {
+            for( int z = Z_MIN; z < Z_MIN + Z_COUNT; z++ ) {
+                for( int x = X_MIN; x < X_MIN + X_COUNT; x++ ) {
+                    ByteBuffer cell = data.getCell(x, y, z);
+                    assertEquals(RECORD_SIZE, cell.remaining());
+                    assertEquals(data.getOrder(), cell.order());
+                    assertEquals(x, cell.getInt());
+                    assertEquals(y, cell.getInt());
+                    assertEquals(z, cell.getInt());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Checks ZoneCache's least-recently-used ordering and size limit and 
+ *  that every payload it drops is released exactly once while payloads 
+ *  it hands back are left to the caller.
+ *
+ *  @author    Paul Speed
+ */
+public class ZoneCacheTest {
+
+    private Object grid1 = new Object();
+    private Object grid2 = new Object();
+
+    @Test
+    public void leastRecentlyUsedGoesFirst() {
+        ZoneCache cache = new ZoneCache(300);
+        TestPayload a = put(cache, grid1, 0, 100);
+        TestPayload b = put(cache, grid1, 1, 100);
+        TestPayload c = put(cache, grid1, 2, 100);
+        assertEquals(3, cache.getCount());
+        assertEquals(300, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+        
+        // Replacing 'a' releases it and makes its cell the most recent
+        TestPayload a2 = put(cache, grid1, 0, 100);
+        assertEquals(1, a.releases);
+        
+        // So 'b' is the one that makes room
+        TestPayload d = put(cache, grid1, 3, 100);
+        assertEquals(1, b.releases);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(300, cache.getSize());
+        
+        assertSame(c, cache.remove(grid1, 2, 0, 0));
+        assertSame(a2, cache.remove(grid1, 0, 0, 0));
+        assertSame(d, cache.remove(grid1, 3, 0, 0));
+        assertNull(cache.remove(grid1, 1, 0, 0));
+        assertEquals(0, c.releases + a2.releases + d.releases);
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void sizeLimit() {
+        ZoneCache cache = new ZoneCache(1000);
+        TestPayload[] payloads = new TestPayload[10];
+        for( int i = 0; i < payloads.length; i++ ) {
+            payloads[i] = put(cache, grid1, i, 50 + i * 10);
+        }
+        
+        // 50 + 60 + ... + 140 = 950 so they all fit.  One more evicts from 
+        // the oldest until it fits again.
+        assertEquals(950, cache.getSize());
+        put(cache, grid1, 10, 200);
+        assertEquals(1, payloads[0].releases);
+        assertEquals(1, payloads[1].releases);
+        assertEquals(1, payloads[2].releases);
+        assertEquals(0, payloads[3].releases);
+        assertEquals(970, cache.getSize());
+        assertEquals(8, cache.getCount());
+        
+        // Shrinking the limit trims right away
+        cache.setMaxSize(500);
+        assertEquals(1, payloads[7].releases);
+        assertEquals(0, payloads[8].releases);
+        assertEquals(470, cache.getSize());
+        assertEquals(3, cache.getCount());
+        
+        // A payload bigger than the whole cache doesn't stay
+        TestPayload huge = put(cache, grid1, 11, 600);
+        assertEquals(1, huge.releases);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+        for( TestPayload payload : payloads ) {
+            assertEquals(1, payload.releases);
+        }
+    }
+
+    @Test
+    public void gridsAreSeparate() {
+        ZoneCache cache = new ZoneCache(1000);
+        TestPayload p1 = put(cache, grid1, 5, 100);
+        TestPayload p2 = put(cache, grid2, 5, 100);
+        assertEquals(2, cache.getCount());
+        assertEquals(0, p1.releases);
+        
+        assertSame(p2, cache.remove(grid2, 5, 0, 0));
+        assertNull(cache.remove(grid2, 5, 0, 0));
+        assertSame(p1, cache.remove(grid1, 5, 0, 0));
+    }
+
+    @Test
+    public void invalidateAndClear() {
+        ZoneCache cache = new ZoneCache(1000);
+        TestPayload a = put(cache, grid1, 0, 100);
+        TestPayload b = put(cache, grid1, 1, 100);
+        TestPayload c = put(cache, grid2, 0, 100);
+        
+        cache.invalidate(grid1, 0, 0, 0);
+        assertEquals(1, a.releases);
+        assertEquals(200, cache.getSize());
+        assertNull(cache.remove(grid1, 0, 0, 0));
+        
+        // Nothing there is fine
+        cache.invalidate(grid1, 0, 0, 0);
+        cache.invalidate(grid1, 7, 0, 0);
+        assertEquals(1, a.releases);
+        
+        cache.clear();
+        assertEquals(1, b.releases);
+        assertEquals(1, c.releases);
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+        
+        // Invalidations and clears aren't evictions
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    private TestPayload put( ZoneCache cache, Object grid, int x, long size ) {
+        TestPayload result = new TestPayload(size);
+        cache.put(grid, x, 0, 0, result);
+        return result;
+    }
+
+    private static class TestPayload implements ZonePayload {
+        private final long size;
+        private int releases;
+
+        public TestPayload( long size ) {
+            this.size = size;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public void release() {
+            releases++;
+        }
+    }
+}
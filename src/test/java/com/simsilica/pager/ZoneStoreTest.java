@@ -0,0 +1,259 @@
+/*
+ * $Id$
+ * 
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+ 
+package com.simsilica.pager;
+
+import com.simsilica.builder.Builder;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ *  Checks that ZoneStore doesn't grow when unchanged results are written
+ *  again and that reopening a store with mostly superseded records 
+ *  compacts it without losing any live records.
+ *
+ *  @author    Paul Speed
+ */
+public class ZoneStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private Grid grid = new Grid(32, 32, 32);
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("zonestore", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void unchangedWritesDontGrow() throws IOException {
+        ZoneStore store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            assertTrue(store.write(1, 0, 2, new TestZone(1, 2, bytes(100, 1))));
+            long size = store.getSize();
+            for( int i = 0; i < 10; i++ ) {
+                assertTrue(store.write(1, 0, 2, new TestZone(1, 2, bytes(100, 1))));
+            }
+            assertEquals(size, store.getSize());
+            
+            // Changed results are still stored
+            assertTrue(store.write(1, 0, 2, new TestZone(1, 2, bytes(100, 2))));
+            assertTrue(store.getSize() > size);
+            assertEquals(ByteBuffer.wrap(bytes(100, 2)), store.read(1, 0, 2));
+        } finally {
+            store.close();
+        }
+        
+        // And the rolled back records don't confuse the next open
+        store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            assertEquals(1, store.getCount());
+            assertEquals(ByteBuffer.wrap(bytes(100, 2)), store.read(1, 0, 2));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void reopenCompacts() throws IOException {
+        Random rand = new Random(42);
+        Map<CellKey, byte[]> expected = new HashMap<CellKey, byte[]>();
+        ZoneStore store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            // Lots of rewrites of a few cells spread over many segments
+            for( int i = 0; i < 500; i++ ) {
+                int x = rand.nextInt(8);
+                int z = rand.nextInt(8);
+                byte[] data = bytes(rand.nextInt(600), i);
+                store.write(x, 0, z, new TestZone(x, z, data));
+                expected.put(new CellKey(null, x, 0, z), data);
+                if( i % 50 == 0 ) {
+                    store.invalidate(x, 0, z);
+                    expected.remove(new CellKey(null, x, 0, z));
+                }
+            }
+        } finally {
+            store.close();
+        }
+        long before = file.length();
+        
+        store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        long compacted;
+        try {
+            compacted = store.getSize();
+            assertTrue("Not compacted, size:" + compacted + " file:" + before, compacted * 2 < before);
+            checkContents(store, expected);
+            
+            // Appending after a compaction still works
+            store.write(100, 0, 100, new TestZone(100, 100, bytes(50, 7)));
+            expected.put(new CellKey(null, 100, 0, 100), bytes(50, 7));
+            checkContents(store, expected);
+            compacted = store.getSize();
+        } finally {
+            store.close();
+        }
+        assertTrue("File not shortened:" + file.length(), file.length() < before);
+        
+        // A second open finds nothing to do and the same contents
+        store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            assertEquals(compacted, store.getSize());
+            checkContents(store, expected);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void clearedRecordsAreReclaimed() throws IOException {
+        ZoneStore store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            for( int i = 0; i < 50; i++ ) {
+                store.write(i, 0, 0, new TestZone(i, 0, bytes(400, i)));
+            }
+            store.clear();
+            store.write(1, 0, 1, new TestZone(1, 1, bytes(10, 1)));
+        } finally {
+            store.close();
+        }
+        store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            assertEquals(1, store.getCount());
+            assertTrue(store.getSize() < SEGMENT_SIZE);
+            assertEquals(ByteBuffer.wrap(bytes(10, 1)), store.read(1, 0, 1));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void interruptedCompactionIsDiscarded() throws IOException {
+        ZoneStore store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            store.write(1, 0, 1, new TestZone(1, 1, bytes(10, 1)));
+        } finally {
+            store.close();
+        }
+        
+        // Fake a crash in the middle of a compaction
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            ByteBuffer flag = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            flag.putInt(0, 1);
+            raf.getChannel().write(flag, 28);
+        } finally {
+            raf.close();
+        }
+        
+        store = new ZoneStore(file, 1, SEGMENT_SIZE);
+        try {
+            assertEquals(0, store.getCount());
+            assertNull(store.read(1, 0, 1));
+        } finally {
+            store.close();
+        }
+    }
+
+    private void checkContents( ZoneStore store, Map<CellKey, byte[]> expected ) {
+        assertEquals(expected.size(), store.getCount());
+        for( Map.Entry<CellKey, byte[]> e : expected.entrySet() ) {
+            CellKey key = e.getKey();
+            ByteBuffer data = store.read(key.getX(), key.getY(), key.getZ());
+            assertNotNull("Missing:" + key, data);
+            assertEquals("Wrong data for:" + key, ByteBuffer.wrap(e.getValue()), data);
+        }
+    }
+
+    private static byte[] bytes( int length, int seed ) {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    private class TestZone extends AbstractZone implements PersistentZone {
+        private final byte[] data;
+
+        public TestZone( int xCell, int zCell, byte[] data ) {
+            super(grid, xCell, 0, zCell);
+            this.data = data;
+        }
+
+        @Override
+        public int getStoredSize() {
+            return data.length;
+        }
+
+        @Override
+        public void write( ByteBuffer buffer ) {
+            buffer.put(data);
+        }
+
+        @Override
+        public boolean load( ByteBuffer buffer ) {
+            return false;
+        }
+
+        @Override
+        public void build() {
+        }
+
+        @Override
+        public void apply( Builder builder ) {
+        }
+
+        @Override
+        public void release( Builder builder ) {
+        }
+    }
+}